@@ -34,11 +34,14 @@ import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Rect;
 import android.graphics.RectF;
-import android.os.Handler;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.widget.ImageView;
 import de.robv.android.xposed.XposedBridge;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @SuppressLint({"AppCompatCustomView", "ViewConstructor"})
 public class CmCircleBattery extends ImageView implements IconManagerListener, BatteryStatusListener {
     private static final String TAG = "GB:CircleBattery";
@@ -46,15 +49,85 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
 
     public enum Style { SOLID, DASHED }
 
-    private Handler mHandler;
+    // charging animation speed in degrees per millisecond
+    private static final float ANIM_SPEED = 0.06f;
+    private static final float ANIM_SPEED_FAST = 0.2f;
+
+    // percentage texts for levels 0-99 so that onDraw doesn't allocate
+    private static final String[] LEVEL_TEXT = new String[100];
+    static {
+        for (int i = 0; i < LEVEL_TEXT.length; i++) {
+            LEVEL_TEXT[i] = Integer.toString(i);
+        }
+    }
+
+    /**
+     * Single vsync aligned clock driving charging animation of all circle battery views.
+     * It ticks at most once per FRAME_BUDGET_MS and only while some view is animating.
+     */
+    static final class ChargingAnimationClock implements Choreographer.FrameCallback {
+        // ~30 fps is plenty for a slowly rotating arc
+        private static final long FRAME_BUDGET_MS = 33;
+
+        private static ChargingAnimationClock sInstance;
+
+        static ChargingAnimationClock getInstance() {
+            if (sInstance == null) {
+                sInstance = new ChargingAnimationClock();
+            }
+            return sInstance;
+        }
+
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+        private final List<CmCircleBattery> mSubscribers = new ArrayList<>();
+        private long mTimeMs;
+        private boolean mScheduled;
+
+        long getTimeMs() {
+            return mTimeMs;
+        }
+
+        void subscribe(CmCircleBattery view) {
+            if (!mSubscribers.contains(view)) {
+                mSubscribers.add(view);
+                if (!mScheduled) {
+                    mChoreographer.postFrameCallback(this);
+                    mScheduled = true;
+                }
+            }
+        }
+
+        void unsubscribe(CmCircleBattery view) {
+            mSubscribers.remove(view);
+            if (mSubscribers.isEmpty() && mScheduled) {
+                mChoreographer.removeFrameCallback(this);
+                mScheduled = false;
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mScheduled = false;
+            mTimeMs = frameTimeNanos / 1000000L;
+            for (int i = 0; i < mSubscribers.size(); i++) {
+                mSubscribers.get(i).invalidate();
+            }
+            if (!mSubscribers.isEmpty()) {
+                mChoreographer.postFrameCallbackDelayed(this, FRAME_BUDGET_MS);
+                mScheduled = true;
+            }
+        }
+    }
 
     // state variables
     private boolean mAttached;      // whether or not attached to a window
+    private boolean mVisibleToUser; // whether or not view and its ancestors are visible
+    private boolean mWindowVisible; // whether or not window is shown
     private boolean mIsCharging;    // whether or not device is currently charging
     private boolean mIsFastCharging; // whether or not device is currently fast charging
     private int     mLevel;         // current battery level
     private int     mAnimOffset;    // current level of charging animation
-    private boolean mIsAnimating;   // stores charge-animation status to reliably remove callbacks
+    private boolean mIsAnimating;   // whether or not subscribed to charging animation clock
     private boolean mPercentage;    // whether to show percentage
     private BatteryStyleController mController;
 
@@ -79,21 +152,13 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
         XposedBridge.log(TAG + ": " + message);
     }
 
-    // runnable to invalidate view via mHandler.postDelayed() call
-    private final Runnable mInvalidate = new Runnable() {
-        public void run() {
-            if(mAttached) {
-                invalidate();
-            }
-        }
-    };
-
     // keeps track of current battery level and charger-plugged-state
     @Override
     public void onBatteryStatusChanged(BatteryData batteryData) {
         mLevel = batteryData.level;
         mIsCharging = batteryData.charging;
         mIsFastCharging = batteryData.fastCharging;
+        updateChargeAnim();
         if (mAttached) {
             invalidate();
         }
@@ -106,7 +171,6 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
         super(context);
 
         mController = controller;
-        mHandler = new Handler();
 
         // initialize and setup all paint variables
         // stroke width is later set in initSizeBasedStuff()
@@ -183,7 +247,10 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
             if (SysUiManagers.BatteryInfoManager != null) {
                 SysUiManagers.BatteryInfoManager.registerListener(this);
             }
-            mHandler.postDelayed(mInvalidate, 250);
+            mVisibleToUser = isShown();
+            mWindowVisible = (getWindowVisibility() == VISIBLE);
+            updateChargeAnim();
+            invalidate();
         }
     }
 
@@ -202,9 +269,24 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
                                 // recalculated on next attach
             mCircleSize = 0;    // makes sure, mCircleSize is reread from icons on
                                 // next attach
+            updateChargeAnim();
         }
     }
 
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        mVisibleToUser = isVisible;
+        updateChargeAnim();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        mWindowVisible = (visibility == VISIBLE);
+        updateChargeAnim();
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         if (mCircleSize == 0) {
@@ -242,7 +324,7 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
             mPaintFont.setColor(usePaint.getColor());
             // Workarround for drawing bug on Samsung Roms
             if (Utils.isSamsungRom()) mPaintFont.setStyle(Paint.Style.FILL);
-            canvas.drawText(Integer.toString(level), textX, mTextY, mPaintFont);
+            canvas.drawText(LEVEL_TEXT[Math.max(level, 0)], textX, mTextY, mPaintFont);
             if (Utils.isSamsungRom()) mPaintFont.setStyle(Paint.Style.STROKE);
         }
 
@@ -254,36 +336,31 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
             initSizeBasedStuff();
         }
 
-        updateChargeAnim();
+        if (mIsAnimating) {
+            mAnimOffset = (int) ((ChargingAnimationClock.getInstance().getTimeMs() *
+                    (mIsFastCharging ? ANIM_SPEED_FAST : ANIM_SPEED)) % 360);
+        }
 
         drawCircle(canvas, mLevel, (mIsCharging ? mAnimOffset : 0), mTextLeftX, mRectLeft);
     }
 
     /***
-     * updates the animation counter
-     * cares for timed callbacks to continue animation cycles
-     * uses mInvalidate for delayed invalidate() callbacks
+     * subscribes to or unsubscribes from shared charging animation clock
+     * animation runs only while charging and the view is actually visible
      */
     private void updateChargeAnim() {
-        if (!mIsCharging || mLevel >= 97) {
-            if (mIsAnimating) {
-                mIsAnimating = false;
-                mAnimOffset = 0;
-                mHandler.removeCallbacks(mInvalidate);
-            }
-            return;
-        }
-
-        mIsAnimating = true;
+        final boolean animate = mAttached && mVisibleToUser && mWindowVisible &&
+                mIsCharging && mLevel < 97;
+        if (animate == mIsAnimating) return;
 
-        if (mAnimOffset >= 360) {
-            mAnimOffset = 0;
+        mIsAnimating = animate;
+        if (animate) {
+            ChargingAnimationClock.getInstance().subscribe(this);
         } else {
-            mAnimOffset += mIsFastCharging ? 6 : 3;
+            ChargingAnimationClock.getInstance().unsubscribe(this);
+            mAnimOffset = 0;
         }
-
-        mHandler.removeCallbacks(mInvalidate);
-        mHandler.postDelayed(mInvalidate, mIsFastCharging ? 30 : 50);
+        if (DEBUG) log("updateChargeAnim: animating=" + animate);
     }
 
     /***
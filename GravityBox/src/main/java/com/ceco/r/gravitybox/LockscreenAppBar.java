@@ -48,6 +48,7 @@ import com.ceco.r.gravitybox.managers.SysUiKeyguardStateMonitor;
 import com.ceco.r.gravitybox.managers.SysUiNotificationDataMonitor;
 import com.ceco.r.gravitybox.managers.SysUiManagers;
 import com.ceco.r.gravitybox.preference.AppPickerPreference;
+import com.ceco.r.gravitybox.shortcuts.ShortcutActionRegistry;
 import com.ceco.r.gravitybox.shortcuts.ShortcutActivity;
 
 import de.robv.android.xposed.XSharedPreferences;
@@ -252,9 +253,8 @@ public class LockscreenAppBar implements SysUiKeyguardStateMonitor.Listener,
             if (DEBUG) log("isLaunchBlocked: " + isLaunchBlocked);
 
             if (!isLaunchBlocked) {
-                Intent newIntent = new Intent(intent.getStringExtra(ShortcutActivity.EXTRA_ACTION));
-                newIntent.putExtras(intent);
-                mContext.sendBroadcast(newIntent);
+                ShortcutActionRegistry.deliverBroadcastShortcut(mContext, intent,
+                        ShortcutActionRegistry.Host.SYSTEMUI);
             }
         // otherwise start activity dismissing keyguard
         } else {
@@ -16,94 +16,169 @@
 
 package com.ceco.r.gravitybox;
 
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
 
 import android.os.StrictMode;
 
 public class MemInfoReader {
-    byte[] mBuffer = new byte[1024];
+    private static final String MEMINFO_PATH = "/proc/meminfo";
 
-    private long mTotalSize;
-    private long mFreeSize;
-    private long mCachedSize;
+    public static final int MEMINFO_TOTAL = 0;
+    public static final int MEMINFO_FREE = 1;
+    public static final int MEMINFO_AVAILABLE = 2;
+    public static final int MEMINFO_CACHED = 3;
+    public static final int MEMINFO_BUFFERS = 4;
+    public static final int MEMINFO_SWAP_FREE = 5;
+    private static final int MEMINFO_COUNT = 6;
 
-    private boolean matchText(byte[] buffer, int index, String text) {
-        int N = text.length();
-        if ((index+N) >= buffer.length) {
+    private static final byte[][] KEYS = new byte[][] {
+            "MemTotal".getBytes(StandardCharsets.US_ASCII),
+            "MemFree".getBytes(StandardCharsets.US_ASCII),
+            "MemAvailable".getBytes(StandardCharsets.US_ASCII),
+            "Cached".getBytes(StandardCharsets.US_ASCII),
+            "Buffers".getBytes(StandardCharsets.US_ASCII),
+            "SwapFree".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    private final int[] mKeys;
+    private final long[] mValues = new long[MEMINFO_COUNT];
+    private byte[] mBuffer = new byte[2048];
+    private RandomAccessFile mFile;
+
+    public MemInfoReader() {
+        this(MEMINFO_TOTAL, MEMINFO_FREE, MEMINFO_AVAILABLE,
+                MEMINFO_CACHED, MEMINFO_BUFFERS, MEMINFO_SWAP_FREE);
+    }
+
+    public MemInfoReader(int... keys) {
+        for (int key : keys) {
+            if (key < 0 || key >= MEMINFO_COUNT) {
+                throw new IllegalArgumentException("Unknown meminfo key: " + key);
+            }
+        }
+        mKeys = keys.clone();
+    }
+
+    private int readFully() throws IOException {
+        if (mFile == null) {
+            mFile = new RandomAccessFile(MEMINFO_PATH, "r");
+        }
+        mFile.seek(0);
+        int len = 0;
+        int read;
+        while ((read = mFile.read(mBuffer, len, mBuffer.length - len)) > 0) {
+            len += read;
+            if (len == mBuffer.length) {
+                // grow once to fit the whole file; subsequent reads reuse it
+                byte[] buffer = new byte[mBuffer.length * 2];
+                System.arraycopy(mBuffer, 0, buffer, 0, len);
+                mBuffer = buffer;
+            }
+        }
+        return len;
+    }
+
+    private static boolean matchKey(byte[] buffer, int index, int len, byte[] key) {
+        final int N = key.length;
+        if (index + N >= len || buffer[index + N] != ':') {
             return false;
         }
-        for (int i=0; i<N; i++) {
-            if (buffer[index+i] != text.charAt(i)) {
+        for (int i = 0; i < N; i++) {
+            if (buffer[index + i] != key[i]) {
                 return false;
             }
         }
         return true;
     }
 
-    private long extractMemValue(byte[] buffer, int index) {
-        while (index < buffer.length && buffer[index] != '\n') {
+    private static long extractMemValue(byte[] buffer, int index, int len) {
+        while (index < len && buffer[index] != '\n') {
             if (buffer[index] >= '0' && buffer[index] <= '9') {
-                int start = index;
-                index++;
-                while (index < buffer.length && buffer[index] >= '0'
-                    && buffer[index] <= '9') {
+                long value = 0;
+                while (index < len && buffer[index] >= '0' && buffer[index] <= '9') {
+                    value = value * 10 + (buffer[index] - '0');
                     index++;
                 }
-                String str = new String(buffer, 0, start, index-start);
-                return ((long)Integer.parseInt(str)) * 1024;
+                return value * 1024;
             }
             index++;
         }
         return 0;
     }
 
+    private void parse(int len) {
+        final int keyCount = mKeys.length;
+        int found = 0;
+        int i = 0;
+        while (i < len && found < keyCount) {
+            for (int k = 0; k < keyCount; k++) {
+                final byte[] key = KEYS[mKeys[k]];
+                if (matchKey(mBuffer, i, len, key)) {
+                    mValues[mKeys[k]] = extractMemValue(mBuffer, i + key.length + 1, len);
+                    found++;
+                    break;
+                }
+            }
+            while (i < len && mBuffer[i] != '\n') {
+                i++;
+            }
+            i++;
+        }
+    }
+
     public void readMemInfo() {
         // Permit disk reads here, as /proc/meminfo isn't really "on
         // disk" and should be fast.  TODO: make BlockGuard ignore
         // /proc/ and /sys/ files perhaps?
         StrictMode.ThreadPolicy savedPolicy = StrictMode.allowThreadDiskReads();
         try {
-            mTotalSize = 0;
-            mFreeSize = 0;
-            mCachedSize = 0;
-            FileInputStream is = new FileInputStream("/proc/meminfo");
-            int len = is.read(mBuffer);
-            is.close();
-            final int BUFLEN = mBuffer.length;
-            int count = 0;
-            for (int i=0; i<len && count < 3; i++) {
-                if (matchText(mBuffer, i, "MemTotal")) {
-                    i += 8;
-                    mTotalSize = extractMemValue(mBuffer, i);
-                    count++;
-                } else if (matchText(mBuffer, i, "MemFree")) {
-                    i += 7;
-                    mFreeSize = extractMemValue(mBuffer, i);
-                    count++;
-                } else if (matchText(mBuffer, i, "Cached")) {
-                    i += 6;
-                    mCachedSize = extractMemValue(mBuffer, i);
-                    count++;
-                }
-                while (i < BUFLEN && mBuffer[i] != '\n') {
-                    i++;
-                }
+            for (int key : mKeys) {
+                mValues[key] = 0;
             }
-        } catch (java.io.IOException ignored) {
+            parse(readFully());
+        } catch (IOException ignored) {
+            close();
         } finally {
             StrictMode.setThreadPolicy(savedPolicy);
         }
     }
 
+    public void close() {
+        if (mFile != null) {
+            try {
+                mFile.close();
+            } catch (IOException ignored) { }
+            mFile = null;
+        }
+    }
+
+    public long getSize(int key) {
+        return mValues[key];
+    }
+
     public long getTotalSize() {
-        return mTotalSize;
+        return mValues[MEMINFO_TOTAL];
     }
 
     public long getFreeSize() {
-        return mFreeSize;
+        return mValues[MEMINFO_FREE];
+    }
+
+    public long getAvailableSize() {
+        return mValues[MEMINFO_AVAILABLE];
     }
 
     public long getCachedSize() {
-        return mCachedSize;
+        return mValues[MEMINFO_CACHED];
+    }
+
+    public long getBuffersSize() {
+        return mValues[MEMINFO_BUFFERS];
+    }
+
+    public long getSwapFreeSize() {
+        return mValues[MEMINFO_SWAP_FREE];
     }
 }
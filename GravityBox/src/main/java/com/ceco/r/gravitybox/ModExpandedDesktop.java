@@ -25,6 +25,7 @@ import android.view.WindowManager;
 
 import com.ceco.r.gravitybox.managers.BroadcastMediator;
 import com.ceco.r.gravitybox.managers.FrameworkManagers;
+import com.ceco.r.gravitybox.managers.NavigationModeMonitor;
 
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XSharedPreferences;
@@ -49,6 +50,45 @@ public class ModExpandedDesktop {
         static final int NAVIGATION_BAR_TRANSLUCENT = 0x80000000;
     }
 
+    /**
+     * Expanded desktop policy compiled into bitmasks applied by per-window hooks
+     */
+    private static class Policy {
+        static final Policy NONE = new Policy(false, false);
+
+        final int visSet, visClear;
+        final int flagsSet, flagsClear;
+        final int clearableClear;
+
+        Policy(boolean statusbarImmersive, boolean navbarImmersive) {
+            int vs = 0, vc = 0, fs = 0, fc = 0, cc = 0;
+            if (statusbarImmersive) {
+                vs |= View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY |
+                        View.SYSTEM_UI_FLAG_FULLSCREEN |
+                        View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN;
+                vc |= View.SYSTEM_UI_FLAG_LAYOUT_STABLE |
+                        ViewConst.STATUS_BAR_TRANSLUCENT;
+                fs |= WindowManager.LayoutParams.FLAG_FULLSCREEN;
+                fc |= WindowManager.LayoutParams.FLAG_FORCE_NOT_FULLSCREEN |
+                        WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS;
+                cc |= View.SYSTEM_UI_FLAG_FULLSCREEN;
+            }
+            if (navbarImmersive) {
+                vs |= View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY
+                        | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
+                        | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION;
+                vc |= View.SYSTEM_UI_FLAG_LAYOUT_STABLE |
+                        ViewConst.NAVIGATION_BAR_TRANSLUCENT;
+                fc |= WindowManager.LayoutParams.FLAG_TRANSLUCENT_NAVIGATION;
+            }
+            visSet = vs;
+            visClear = vc;
+            flagsSet = fs;
+            flagsClear = fc;
+            clearableClear = cc;
+        }
+    }
+
     private static class NavbarDimensions {
         int wPort, hPort, hPortFrame, hLand, hLandFrame;
         NavbarDimensions(int wp, int hp, int hpf, int hl, int hlf) {
@@ -66,6 +106,9 @@ public class ModExpandedDesktop {
     private static boolean mExpandedDesktop;
     private static int mExpandedDesktopMode;
     private static NavbarDimensions mNavbarDimensions;
+    private static volatile Policy mPolicy = Policy.NONE;
+    private static volatile boolean mNavbarHidden;
+    private static NavigationModeMonitor mNavigationModeMonitor;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -117,6 +160,7 @@ public class ModExpandedDesktop {
             if (mExpandedDesktop != expandedDesktop) {
                 mExpandedDesktop = expandedDesktop;
             }
+            compilePolicy();
 
             Object displayPolicy = XposedHelpers.getObjectField(mPhoneWindowManager, "mDefaultDisplayPolicy");
             Object displayRotation = XposedHelpers.callMethod(
@@ -134,7 +178,7 @@ public class ModExpandedDesktop {
             final int landscapeRotation = (int) XposedHelpers.callMethod(displayRotation, "getLandscapeRotation");
             final int seascapeRotation = (int) XposedHelpers.callMethod(displayRotation, "getSeascapeRotation");
 
-            if (isNavbarHidden()) {
+            if (mNavbarHidden) {
                 navigationBarWidthForRotation[portraitRotation]
                         = navigationBarWidthForRotation[upsideDownRotation]
                         = navigationBarWidthForRotation[landscapeRotation]
@@ -175,6 +219,19 @@ public class ModExpandedDesktop {
         }
     }
 
+    private static void compilePolicy() {
+        mNavbarHidden = isNavbarHidden(mExpandedDesktopMode);
+        mPolicy = createPolicy(mExpandedDesktopMode);
+        if (DEBUG) log("compilePolicy: navbarHidden=" + mNavbarHidden);
+    }
+
+    private static Policy createPolicy(int mode) {
+        final boolean statusbarImmersive = isStatusbarImmersive(mode);
+        final boolean navbarImmersive = isNavbarImmersive(mode) || isNavbarHidden(mode);
+        return (statusbarImmersive || navbarImmersive) ?
+                new Policy(statusbarImmersive, navbarImmersive) : Policy.NONE;
+    }
+
     private static void updateNavbarDimensions(boolean updateSettings) {
         if (mContext == null) return;
         try {
@@ -231,6 +288,8 @@ public class ModExpandedDesktop {
                                 (Handler) XposedHelpers.getObjectField(param.thisObject, "mHandler"));
                         mSettingsObserver.observe();
 
+                        mNavigationModeMonitor = NavigationModeMonitor.getInstance(mContext);
+
                         if (DEBUG) log("Phone window manager initialized");
                     } catch (Throwable t) {
                         GravityBox.log(TAG, t);
@@ -242,7 +301,7 @@ public class ModExpandedDesktop {
                     "onConfigurationChanged", new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
-                    updateNavbarDimensions(isNavbarHidden());
+                    updateNavbarDimensions(mNavbarHidden);
                 }
             });
 
@@ -250,22 +309,9 @@ public class ModExpandedDesktop {
                     CLASS_WINDOW_STATE, WindowManager.LayoutParams.class, new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
-                    int vis = (int) param.getResult();
-                    if (isStatusbarImmersive()) {
-                        vis |= View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY |
-                                View.SYSTEM_UI_FLAG_FULLSCREEN |
-                                View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN;
-                        vis &= ~(View.SYSTEM_UI_FLAG_LAYOUT_STABLE |
-                                 ViewConst.STATUS_BAR_TRANSLUCENT);
-                    }
-                    if (isNavbarImmersive() || isNavbarHidden()) {
-                        vis |= View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY
-                                | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
-                                | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION;
-                        vis &= ~(View.SYSTEM_UI_FLAG_LAYOUT_STABLE |
-                                 ViewConst.NAVIGATION_BAR_TRANSLUCENT);
-                    }
-                    param.setResult(vis);
+                    final Policy p = mPolicy;
+                    if (p == Policy.NONE) return;
+                    param.setResult(((int) param.getResult() | p.visSet) & ~p.visClear);
                 }
             });
 
@@ -273,16 +319,9 @@ public class ModExpandedDesktop {
                     CLASS_WINDOW_STATE, WindowManager.LayoutParams.class, new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
-                    int flags = (int) param.getResult();
-                    if (isStatusbarImmersive()) {
-                        flags |= WindowManager.LayoutParams.FLAG_FULLSCREEN;
-                        flags &= ~(WindowManager.LayoutParams.FLAG_FORCE_NOT_FULLSCREEN |
-                                    WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);
-                    }
-                    if (isNavbarImmersive() || isNavbarHidden()) {
-                        flags &= ~WindowManager.LayoutParams.FLAG_TRANSLUCENT_NAVIGATION;
-                    }
-                    param.setResult(flags);
+                    final Policy p = mPolicy;
+                    if (p == Policy.NONE) return;
+                    param.setResult(((int) param.getResult() | p.flagsSet) & ~p.flagsClear);
                 }
             });
 
@@ -290,11 +329,9 @@ public class ModExpandedDesktop {
                     CLASS_WINDOW_STATE, int.class, new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
-                    int clearableFlags = (int) param.getResult();
-                    if (isStatusbarImmersive()) {
-                        clearableFlags &= ~View.SYSTEM_UI_FLAG_FULLSCREEN;
-                    }
-                    param.setResult(clearableFlags);
+                    final Policy p = mPolicy;
+                    if (p == Policy.NONE) return;
+                    param.setResult((int) param.getResult() & ~p.clearableClear);
                 }
             });
 
@@ -302,8 +339,9 @@ public class ModExpandedDesktop {
                     CLASS_WINDOW_STATE, new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    if (param.args[0] == XposedHelpers.getObjectField(param.thisObject, "mNavigationBar")
-                            && isNavbarHidden() && !Utils.isNavbarGestural(mContext)) {
+                    if (mNavbarHidden && mNavigationModeMonitor != null &&
+                            !mNavigationModeMonitor.isGestural() && param.args[0] ==
+                            XposedHelpers.getObjectField(param.thisObject, "mNavigationBar")) {
                         if (DEBUG) log("requestTransientBars: ignoring since navbar is hidden");
                         param.setResult(null);
                     }
@@ -314,22 +352,22 @@ public class ModExpandedDesktop {
         }
     }
 
-    private static boolean isStatusbarImmersive() {
+    private static boolean isStatusbarImmersive(int mode) {
         return (mExpandedDesktop
-                && (mExpandedDesktopMode == GravityBoxSettings.ED_SEMI_IMMERSIVE ||
-                    mExpandedDesktopMode == GravityBoxSettings.ED_IMMERSIVE_STATUSBAR ||
-                    mExpandedDesktopMode == GravityBoxSettings.ED_IMMERSIVE));
+                && (mode == GravityBoxSettings.ED_SEMI_IMMERSIVE ||
+                    mode == GravityBoxSettings.ED_IMMERSIVE_STATUSBAR ||
+                    mode == GravityBoxSettings.ED_IMMERSIVE));
     }
 
-    private static boolean isNavbarImmersive() {
+    private static boolean isNavbarImmersive(int mode) {
         return (mExpandedDesktop
-                && (mExpandedDesktopMode == GravityBoxSettings.ED_IMMERSIVE ||
-                mExpandedDesktopMode == GravityBoxSettings.ED_IMMERSIVE_NAVBAR));
+                && (mode == GravityBoxSettings.ED_IMMERSIVE ||
+                mode == GravityBoxSettings.ED_IMMERSIVE_NAVBAR));
     }
 
-    private static boolean isNavbarHidden() {
+    private static boolean isNavbarHidden(int mode) {
         return (mExpandedDesktop && 
-                    (mExpandedDesktopMode == GravityBoxSettings.ED_HIDE_NAVBAR ||
-                            mExpandedDesktopMode == GravityBoxSettings.ED_SEMI_IMMERSIVE));
+                    (mode == GravityBoxSettings.ED_HIDE_NAVBAR ||
+                            mode == GravityBoxSettings.ED_SEMI_IMMERSIVE));
     }
 }
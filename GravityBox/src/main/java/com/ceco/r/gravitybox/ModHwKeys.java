@@ -64,6 +64,7 @@ import com.ceco.r.gravitybox.managers.FrameworkManagers;
 import com.ceco.r.gravitybox.managers.SysUiAppLauncher;
 import com.ceco.r.gravitybox.shortcuts.AShortcut;
 import com.ceco.r.gravitybox.shortcuts.RingerModeShortcut;
+import com.ceco.r.gravitybox.shortcuts.ShortcutActionRegistry;
 import com.ceco.r.gravitybox.shortcuts.ShortcutActivity;
 
 import de.robv.android.xposed.XC_MethodHook;
@@ -1357,9 +1358,8 @@ public class ModHwKeys {
                                         ShortcutActivity.EXTRA_ACTION));
                     } catch (Throwable ignore) { }
                     if (DEBUG) log("isLaunchBlocked: " + isLaunchBlocked);
-                    Intent newIntent = new Intent(intent.getStringExtra(ShortcutActivity.EXTRA_ACTION));
-                    newIntent.putExtras(intent);
-                    mContext.sendBroadcast(newIntent);
+                    ShortcutActionRegistry.deliverBroadcastShortcut(mContext, intent,
+                            ShortcutActionRegistry.Host.SYSTEM);
                 // otherwise start activity (dismissing keyguard if necessary)
                 } else {
                     dismissKeyguard();
@@ -1435,9 +1435,8 @@ public class ModHwKeys {
 
     private static void toggleTorch() {
         try {
-            Intent intent = new Intent(mGbContext, TorchService.class);
-            intent.setAction(TorchService.ACTION_TOGGLE_TORCH);
-            mGbContext.startService(intent);
+            // created lazily since camera service may not be available yet when policy initializes
+            TorchController.getInstance(mContext).toggleTorch();
         } catch (Throwable t) {
             GravityBox.log(TAG, "Error toggling Torch: ", t);
         }
@@ -40,6 +40,7 @@ import android.widget.Space;
 import android.widget.ImageView.ScaleType;
 
 import com.ceco.r.gravitybox.managers.BroadcastMediator;
+import com.ceco.r.gravitybox.managers.NavigationModeMonitor;
 import com.ceco.r.gravitybox.managers.SysUiManagers;
 
 import de.robv.android.xposed.XC_MethodHook;
@@ -162,6 +163,14 @@ public class ModNavigationBar {
         }
     }
 
+    private static NavigationModeMonitor.Listener mNavigationModeListener = mode -> {
+        if (DEBUG) log("Navigation mode changed: " + mode);
+        if (mNavigationBarView != null) {
+            setCustomKeyVisibility();
+            setDpadKeyVisibility();
+        }
+    };
+
     private static BroadcastMediator.Receiver mBroadcastReceiver = (context, intent) -> {
         if (DEBUG) log("Broadcast received: " + intent.toString());
         if (intent.getAction().equals(GravityBoxSettings.ACTION_PREF_NAVBAR_CHANGED)) {
@@ -304,6 +313,8 @@ public class ModNavigationBar {
                             GravityBoxSettings.ACTION_PREF_HWKEY_CHANGED,
                             GravityBoxSettings.ACTION_PREF_PIE_CHANGED,
                             GravityBoxSettings.ACTION_PREF_NAVBAR_SWAP_KEYS);
+                    NavigationModeMonitor.getInstance(mNavigationBarView.getContext())
+                            .addListener(mNavigationModeListener);
                     if (DEBUG) log("NavigationBarView constructed; Broadcast receiver registered");
                 }
             });
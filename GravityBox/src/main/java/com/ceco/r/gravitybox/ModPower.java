@@ -33,6 +33,7 @@ import android.os.IBinder;
 import android.os.Message;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
 import android.telephony.TelephonyManager;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XC_MethodReplacement;
@@ -52,6 +53,11 @@ public class ModPower {
     private static final int MSG_UNREGISTER_PROX_SENSOR_LISTENER = 101;
     public static final int MAX_PROXIMITY_WAIT = 500;
     private static final int MAX_PROXIMITY_TTL = MAX_PROXIMITY_WAIT * 2;
+    // listener stays registered for at least MAX_PROXIMITY_TTL after a sample and an on-change
+    // sensor stays silent while the state holds; trust the sample a bit beyond that
+    private static final long PROXIMITY_FRESHNESS_NS = (MAX_PROXIMITY_TTL + MAX_PROXIMITY_WAIT) * 1000000L;
+    // batching hint for sensor hub; keeps event delivery well within MAX_PROXIMITY_WAIT
+    private static final int PROXIMITY_MAX_REPORT_LATENCY_US = MAX_PROXIMITY_WAIT * 1000 / 4;
 
     private static Context mContext;
     private static Handler mHandler;
@@ -60,6 +66,8 @@ public class ModPower {
     private static Object mLock;
     private static Runnable mWakeUpRunnable;
     private static boolean mProxSensorCovered;
+    private static long mProxStateNanos;
+    private static long mWakeUpRequestNanos;
     private static WakeLock mWakeLock;
     private static boolean mIgnoreIncomingCall;
     private static boolean mIsChargingSoundCustom;
@@ -156,7 +164,10 @@ public class ModPower {
                             return;
                         }
 
+                        mWakeUpRequestNanos = SystemClock.elapsedRealtimeNanos();
                         mWakeUpRunnable = () -> {
+                            if (DEBUG) log("Proximity wake up decision latency: " +
+                                    (SystemClock.elapsedRealtimeNanos() - mWakeUpRequestNanos) / 1000000L + "ms");
                             final long ident = Binder.clearCallingIdentity();
                             try {
                                 if (DEBUG) log("Waking up...");
@@ -263,7 +274,11 @@ public class ModPower {
         try {
             if (enabled) {
                 mSensorManager = (SensorManager) mContext.getSystemService(Context.SENSOR_SERVICE);
-                mProxSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_PROXIMITY);
+                // prefer wake-up variant so events are delivered without waiting for AP wake
+                mProxSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_PROXIMITY, true);
+                if (mProxSensor == null) {
+                    mProxSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_PROXIMITY);
+                }
                 mWakeLock = ((PowerManager) mContext.getSystemService(Context.POWER_SERVICE))
                         .newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
             } else {
@@ -271,6 +286,7 @@ public class ModPower {
                 mProxSensor = null;
                 mSensorManager = null;
                 mWakeLock = null;
+                mProxStateNanos = 0;
             }
             if (DEBUG) log("toggleWakeUpWithProximityFeature: " + enabled);
         } catch (Throwable t) {
@@ -303,15 +319,27 @@ public class ModPower {
             if (!mProxSensorCovered) {
                 mWakeUpRunnable.run();
             }
+        } else if (isProximityStateFresh() && !mProxSensorCovered) {
+            if (DEBUG) log("Recent proximity state is uncovered; waking up without sensor wait");
+            mWakeUpRunnable.run();
         } else {
             mHandler.sendEmptyMessageDelayed(MSG_WAKE_UP, MAX_PROXIMITY_WAIT);
-            mSensorManager.registerListener(mProxSensorListener, mProxSensor, 
-                    SensorManager.SENSOR_DELAY_FASTEST);
-            mWakeLock.acquire();
+            // on-change sensors ignore sampling period
+            final int samplingPeriod = mProxSensor.getReportingMode() == Sensor.REPORTING_MODE_ON_CHANGE ?
+                    SensorManager.SENSOR_DELAY_NORMAL : SensorManager.SENSOR_DELAY_FASTEST;
+            mSensorManager.registerListener(mProxSensorListener, mProxSensor,
+                    samplingPeriod, PROXIMITY_MAX_REPORT_LATENCY_US, mHandler);
+            // MSG_WAKE_UP is uptime based so keep device awake until it's delivered
+            mWakeLock.acquire(MAX_PROXIMITY_TTL);
             if (DEBUG) log("Proximity sensor listener resgistered");
         }
     }
 
+    private static boolean isProximityStateFresh() {
+        return (mProxStateNanos != 0 &&
+                SystemClock.elapsedRealtimeNanos() - mProxStateNanos < PROXIMITY_FRESHNESS_NS);
+    }
+
     private static void unregisterProxSensorListener() {
         if (mSensorManager != null && mProxSensor != null) {
             mSensorManager.unregisterListener(mProxSensorListener, mProxSensor);
@@ -326,6 +354,8 @@ public class ModPower {
         @Override
         public void onSensorChanged(SensorEvent event) {
             mProxSensorCovered = event.values[0] != mProxSensor.getMaximumRange();
+            // event timestamp shares elapsedRealtimeNanos time base
+            mProxStateNanos = event.timestamp;
             if (DEBUG) log("onSensorChanged:  mProxSensorCovered=" + mProxSensorCovered);
             if (!mHandler.hasMessages(MSG_UNREGISTER_PROX_SENSOR_LISTENER)) {
                 if (DEBUG) log("Proximity sensor listener was not alive; scheduling unreg");
@@ -17,6 +17,8 @@ package com.ceco.r.gravitybox;
 
 import android.graphics.Rect;
 
+import java.lang.reflect.Method;
+
 import com.ceco.r.gravitybox.managers.SysUiManagers;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
@@ -30,6 +32,9 @@ public class ModStatusbarColor {
     private static final String CLASS_HEADSUP_APPEARANCE_CTRL = "com.android.systemui.statusbar.phone.HeadsUpAppearanceController";
     private static final boolean DEBUG = false;
 
+    private static Method mGetNonBatteryClockAlphaFor;
+    private static Method mGetBatteryClockAlpha;
+
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
     }
@@ -37,15 +42,20 @@ public class ModStatusbarColor {
     // in process hooks
     public static void init(final ClassLoader classLoader) {
         try {
-            XposedHelpers.findAndHookMethod(CLASS_SB_TRANSITIONS, classLoader,
+            Class<?> classSbTransitions = XposedHelpers.findClass(CLASS_SB_TRANSITIONS, classLoader);
+            mGetNonBatteryClockAlphaFor = XposedHelpers.findMethodExact(classSbTransitions,
+                    "getNonBatteryClockAlphaFor", int.class);
+            mGetBatteryClockAlpha = XposedHelpers.findMethodExact(classSbTransitions,
+                    "getBatteryClockAlpha", int.class);
+            XposedHelpers.findAndHookMethod(classSbTransitions,
                     "applyMode", int.class, boolean.class, new XC_MethodHook() {
                 @Override
-                protected void afterHookedMethod(MethodHookParam param) {
+                protected void afterHookedMethod(MethodHookParam param) throws Throwable {
                     if (SysUiManagers.IconManager != null) {
-                        final float signalClusterAlpha = (Float) XposedHelpers.callMethod(
-                                param.thisObject, "getNonBatteryClockAlphaFor", (Integer) param.args[0]);
-                        final float textAndBatteryAlpha = (Float) XposedHelpers.callMethod(
-                                param.thisObject, "getBatteryClockAlpha", (Integer) param.args[0]);
+                        final float signalClusterAlpha = (Float) mGetNonBatteryClockAlphaFor.invoke(
+                                param.thisObject, param.args[0]);
+                        final float textAndBatteryAlpha = (Float) mGetBatteryClockAlpha.invoke(
+                                param.thisObject, param.args[0]);
                         SysUiManagers.IconManager.setIconAlpha(signalClusterAlpha, textAndBatteryAlpha);
                     }
                 }
@@ -19,11 +19,12 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.Network;
-import android.net.NetworkInfo;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Handler;
 
 import com.ceco.r.gravitybox.managers.BroadcastMediator;
 import com.ceco.r.gravitybox.managers.FrameworkManagers;
@@ -38,6 +39,7 @@ public class ModTrustManager {
     private static final boolean DEBUG = false;
 
     private static final String CLASS_TRUST_MANAGER_SERVICE = "com.android.server.trust.TrustManagerService";
+    private static final int PHASE_SYSTEM_SERVICES_READY = 500;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -50,6 +52,11 @@ public class ModTrustManager {
     private static boolean mUpdateTrustAlreadyCalled;
     private static boolean mForceRefreshAgentList;
     private static boolean mWifiConnected;
+    private static Network mWifiNetwork;
+    private static String mWifiSsid;
+    // precomputed result for aggregateIsTrusted; updated on network or trusted list changes
+    private static volatile boolean mTrustedWifiConnected;
+    private static boolean mNetworkCallbackRegistered;
 
     private static BroadcastMediator.Receiver mBroadcastReceiver = (context, intent) -> {
         String action = intent.getAction();
@@ -62,48 +69,73 @@ public class ModTrustManager {
                 mWifiTrusted = new HashSet<>(Arrays.asList(values));
                 if (DEBUG) log("ACTION_WIFI_TRUSTED_CHANGED: mWifiTrusted=" + mWifiTrusted +
                         "; mForceRefreshAgentList=" + mForceRefreshAgentList);
+                updateTrustedWifiConnected();
                 updateTrustAll();
             }
-        } else if (action.equals(ConnectivityManager.CONNECTIVITY_ACTION)) {
-            if (intent.getIntExtra(ConnectivityManager.EXTRA_NETWORK_TYPE, -1) ==
-                    ConnectivityManager.TYPE_WIFI) {
+        }
+    };
+
+    private static final ConnectivityManager.NetworkCallback mWifiNetworkCallback =
+            new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(Network network) {
+            mWifiNetwork = network;
+            onWifiConnectivityChanged();
+        }
+
+        @Override
+        public void onLost(Network network) {
+            if (network.equals(mWifiNetwork)) {
+                mWifiNetwork = null;
                 onWifiConnectivityChanged();
             }
         }
     };
 
-    private static void onWifiConnectivityChanged() {
+    private static void registerWifiNetworkCallback() {
+        if (mNetworkCallbackRegistered) return;
         try {
-            final boolean isWifiConnected = isWifiConnected();
-            boolean connectedChanged = mWifiConnected != isWifiConnected;
-            mWifiConnected = isWifiConnected;
-            if (DEBUG) log("onWifiConnectivityChanged: connected=" + mWifiConnected);
-            if ((mWifiTrusted.size() > 0 || mForceRefreshAgentList) && connectedChanged) {
-                updateTrustAll();
-            }
+            NetworkRequest request = new NetworkRequest.Builder()
+                    .addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
+                    .build();
+            Handler handler = (Handler) XposedHelpers.getObjectField(mTrustManager, "mHandler");
+            mConnectivityManager.registerNetworkCallback(request, mWifiNetworkCallback, handler);
+            mNetworkCallbackRegistered = true;
+            if (DEBUG) log("Wi-Fi network callback registered");
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
         }
     }
 
-    @SuppressLint("MissingPermission")
-    private static boolean isWifiConnected() {
+    private static void onWifiConnectivityChanged() {
         try {
-            Network[] networkInfos= mConnectivityManager.getAllNetworks();
-            for (Network net : networkInfos) {
-                NetworkInfo netInfo = mConnectivityManager.getNetworkInfo(net);
-                if (netInfo.getType() == ConnectivityManager.TYPE_WIFI &&
-                        netInfo.isConnected()) {
-                    return true;
-                }
+            final boolean isWifiConnected = (mWifiNetwork != null);
+            boolean connectedChanged = mWifiConnected != isWifiConnected;
+            mWifiConnected = isWifiConnected;
+            // SSID is fetched only when the Wi-Fi network changes, never from trust evaluation
+            mWifiSsid = isWifiConnected && mWifiManager != null ?
+                    filterSSID(mWifiManager.getWifiSsid()) : null;
+            boolean trustedChanged = updateTrustedWifiConnected();
+            if (DEBUG) log("onWifiConnectivityChanged: connected=" + mWifiConnected +
+                    "; ssid=" + mWifiSsid);
+            if ((mWifiTrusted.size() > 0 || mForceRefreshAgentList) &&
+                    (connectedChanged || trustedChanged)) {
+                updateTrustAll();
             }
-            return false;
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
-            return false;
         }
     }
 
+    private static boolean updateTrustedWifiConnected() {
+        final boolean trusted = mWifiConnected && mWifiSsid != null &&
+                mWifiTrusted.contains(mWifiSsid);
+        final boolean changed = (trusted != mTrustedWifiConnected);
+        mTrustedWifiConnected = trusted;
+        if (DEBUG && changed) log("mTrustedWifiConnected=" + trusted);
+        return changed;
+    }
+
     private static void updateTrustAll() {
         try {
             XposedHelpers.callMethod(mTrustManager, "updateTrustAll");
@@ -129,13 +161,22 @@ public class ModTrustManager {
                             Context.CONNECTIVITY_SERVICE);
 
                     FrameworkManagers.BroadcastMediator.subscribe(mBroadcastReceiver,
-                            WifiPriorityActivity.ACTION_WIFI_TRUSTED_CHANGED,
-                            ConnectivityManager.CONNECTIVITY_ACTION);
+                            WifiPriorityActivity.ACTION_WIFI_TRUSTED_CHANGED);
 
                     if (DEBUG) log("Trust manager constructed");
                 }
             });
 
+            XposedHelpers.findAndHookMethod(CLASS_TRUST_MANAGER_SERVICE, classLoader,
+                    "onBootPhase", int.class, new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(final MethodHookParam param) {
+                    if ((int) param.args[0] >= PHASE_SYSTEM_SERVICES_READY) {
+                        registerWifiNetworkCallback();
+                    }
+                }
+            });
+
             XposedHelpers.findAndHookMethod(CLASS_TRUST_MANAGER_SERVICE, classLoader,
                     "refreshAgentList", int.class, new XC_MethodHook() {
                 @Override
@@ -180,18 +221,15 @@ public class ModTrustManager {
                     "aggregateIsTrusted", int.class, new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(final MethodHookParam param) {
-                    if (mWifiManager == null || mWifiTrusted.size() == 0 || !mWifiConnected) return;
+                    if (!mTrustedWifiConnected) return;
 
                     if (!isTrustAllowedForUser((int)param.args[0])) {
                         if (DEBUG) log("aggregateIsTrusted: user not yet authenticated");
                         return;
                     }
 
-                    String ssid = filterSSID(mWifiManager.getWifiSsid());
-                    if (mWifiTrusted.contains(ssid)) {
-                        if (DEBUG) log("aggregateIsTrusted: yes, as wifi trusted list contains: " + ssid);
-                        param.setResult(true);
-                    }
+                    if (DEBUG) log("aggregateIsTrusted: yes, as wifi trusted list contains: " + mWifiSsid);
+                    param.setResult(true);
                 }
             });
         } catch (Throwable t) {
@@ -22,7 +22,12 @@ import static de.robv.android.xposed.XposedHelpers.setAdditionalInstanceField;
 
 import android.content.Context;
 import android.content.Intent;
+import android.media.AudioAttributes;
 import android.media.AudioManager;
+import android.media.AudioPlaybackConfiguration;
+import android.media.session.MediaController;
+import android.media.session.MediaSessionManager;
+import android.media.session.PlaybackState;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.PowerManager;
@@ -33,6 +38,9 @@ import android.view.ViewConfiguration;
 import com.ceco.r.gravitybox.managers.BroadcastMediator;
 import com.ceco.r.gravitybox.managers.FrameworkManagers;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
@@ -44,7 +52,8 @@ public class ModVolumeKeySkipTrack {
     private static final String CLASS_IWINDOW_MANAGER = "android.view.IWindowManager";
     private static final String CLASS_WINDOW_MANAGER_FUNCS = "com.android.server.policy.WindowManagerPolicy.WindowManagerFuncs";
     private static final boolean DEBUG = false;
-
+    // AudioPlaybackConfiguration.PLAYER_STATE_STARTED
+    private static final int PLAYER_STATE_STARTED = 2;
 
     private static boolean mIsLongPress = false;
     private static boolean mAllowSkipTrack;
@@ -53,6 +62,15 @@ public class ModVolumeKeySkipTrack {
     private static String mVolumeRockerWakeMode;
     private static boolean mVolumeRockerWakeAllowMusic;
 
+    // playback state tracked from audio playback and media session callbacks
+    // so that key interception doesn't need to query audio service
+    private static volatile boolean mMusicActive;
+    private static volatile boolean mLocalPlaybackActive;
+    private static volatile boolean mPlaybackTrackerRegistered;
+    private static Context mContext;
+    private static Handler mHandler;
+    private static final List<MediaController> mMediaControllers = new ArrayList<>();
+
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
     }
@@ -63,6 +81,7 @@ public class ModVolumeKeySkipTrack {
                 intent.hasExtra(GravityBoxSettings.EXTRA_VOL_MUSIC_CONTROLS)) {
             mAllowSkipTrack = intent.getBooleanExtra(GravityBoxSettings.EXTRA_VOL_MUSIC_CONTROLS, false);
             if (DEBUG) log("mAllowSkipTrack=" + mAllowSkipTrack);
+            updatePlaybackTracker();
         } else if (action.equals(GravityBoxSettings.ACTION_PREF_VOLUME_ROCKER_WAKE_CHANGED)) {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_VOLUME_ROCKER_WAKE)) {
                 mVolumeRockerWakeMode = intent.getStringExtra(GravityBoxSettings.EXTRA_VOLUME_ROCKER_WAKE);
@@ -93,6 +112,17 @@ public class ModVolumeKeySkipTrack {
 
             XposedHelpers.findAndHookMethod(CLASS_PHONE_WINDOW_MANAGER, classLoader,
                     "interceptKeyBeforeQueueing", KeyEvent.class, int.class, handleInterceptKeyBeforeQueueing);
+
+            XposedHelpers.findAndHookMethod(CLASS_PHONE_WINDOW_MANAGER, classLoader,
+                    "systemReady", new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) {
+                    mContext = (Context) XposedHelpers.getObjectField(param.thisObject, "mContext");
+                    mHandler = (Handler) getObjectField(param.thisObject, "mHandler");
+                    initManagers(mContext);
+                    updatePlaybackTracker();
+                }
+            });
         } catch (Throwable t) { 
             GravityBox.log(TAG, t); 
         }
@@ -174,7 +204,131 @@ public class ModVolumeKeySkipTrack {
         }
     }
 
+    // playback tracker is kept registered only while skip track feature is enabled
+    private static synchronized void updatePlaybackTracker() {
+        if (mAllowSkipTrack) {
+            registerPlaybackTracker();
+        } else {
+            unregisterPlaybackTracker();
+        }
+    }
+
+    private static void registerPlaybackTracker() {
+        if (mPlaybackTrackerRegistered || mAudioManager == null || mContext == null) return;
+        try {
+            mAudioManager.registerAudioPlaybackCallback(mPlaybackCallback, mHandler);
+            mLocalPlaybackActive = isLocalPlaybackActive(mAudioManager.getActivePlaybackConfigurations());
+            MediaSessionManager msm = (MediaSessionManager)
+                    mContext.getSystemService(Context.MEDIA_SESSION_SERVICE);
+            msm.addOnActiveSessionsChangedListener(mSessionsChangedListener, null, mHandler);
+            mSessionsChangedListener.onActiveSessionsChanged(msm.getActiveSessions(null));
+            mPlaybackTrackerRegistered = true;
+            if (DEBUG) log("Playback state tracker registered; mMusicActive=" + mMusicActive);
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+        }
+    }
+
+    private static void unregisterPlaybackTracker() {
+        if (!mPlaybackTrackerRegistered) return;
+        mPlaybackTrackerRegistered = false;
+        try {
+            mAudioManager.unregisterAudioPlaybackCallback(mPlaybackCallback);
+            MediaSessionManager msm = (MediaSessionManager)
+                    mContext.getSystemService(Context.MEDIA_SESSION_SERVICE);
+            msm.removeOnActiveSessionsChangedListener(mSessionsChangedListener);
+            synchronized (mMediaControllers) {
+                for (MediaController mc : mMediaControllers) {
+                    mc.unregisterCallback(mMediaControllerCallback);
+                }
+                mMediaControllers.clear();
+            }
+            mLocalPlaybackActive = false;
+            mMusicActive = false;
+            if (DEBUG) log("Playback state tracker unregistered");
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+        }
+    }
+
+    private static final AudioManager.AudioPlaybackCallback mPlaybackCallback =
+            new AudioManager.AudioPlaybackCallback() {
+        @Override
+        public void onPlaybackConfigChanged(List<AudioPlaybackConfiguration> configs) {
+            mLocalPlaybackActive = isLocalPlaybackActive(configs);
+            updateMusicActive();
+        }
+    };
+
+    // derived from configurations delivered with the callback since audio policy
+    // may still report the stream as active at the moment a player pauses
+    private static boolean isLocalPlaybackActive(List<AudioPlaybackConfiguration> configs) {
+        if (configs == null) return false;
+        for (AudioPlaybackConfiguration config : configs) {
+            try {
+                if (config.getAudioAttributes().getUsage() == AudioAttributes.USAGE_MEDIA &&
+                        (int) XposedHelpers.callMethod(config, "getPlayerState") == PLAYER_STATE_STARTED) {
+                    return true;
+                }
+            } catch (Throwable t) {
+                GravityBox.log(TAG, t);
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSessionPlaybackActive() {
+        synchronized (mMediaControllers) {
+            for (MediaController mc : mMediaControllers) {
+                PlaybackState state = mc.getPlaybackState();
+                if (state != null && state.getState() == PlaybackState.STATE_PLAYING) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final MediaController.Callback mMediaControllerCallback =
+            new MediaController.Callback() {
+        @Override
+        public void onPlaybackStateChanged(PlaybackState state) {
+            updateMusicActive();
+        }
+
+        @Override
+        public void onSessionDestroyed() {
+            updateMusicActive();
+        }
+    };
+
+    private static final MediaSessionManager.OnActiveSessionsChangedListener mSessionsChangedListener =
+            controllers -> {
+        synchronized (mMediaControllers) {
+            for (MediaController mc : mMediaControllers) {
+                mc.unregisterCallback(mMediaControllerCallback);
+            }
+            mMediaControllers.clear();
+            if (controllers != null) {
+                for (MediaController mc : controllers) {
+                    mc.registerCallback(mMediaControllerCallback);
+                    mMediaControllers.add(mc);
+                }
+            }
+        }
+        updateMusicActive();
+    };
+
+    private static void updateMusicActive() {
+        mMusicActive = mLocalPlaybackActive || isSessionPlaybackActive();
+        if (DEBUG) log("updateMusicActive: " + mMusicActive);
+    }
+
     private static boolean isMusicActive() {
+        return (mPlaybackTrackerRegistered ? mMusicActive : queryMusicActive());
+    }
+
+    private static boolean queryMusicActive() {
         // check local
         if (mAudioManager.isMusicActive())
             return true;
@@ -14,12 +14,14 @@
  */
 package com.ceco.r.gravitybox;
 
+import java.lang.reflect.Field;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import android.media.AudioManager;
+import android.util.SparseArray;
 import android.view.View;
 import android.widget.ImageButton;
 
@@ -42,21 +44,34 @@ public class ModVolumePanel {
             CLASS_VOLUME_PANEL + ".VolumeRow";
     private static final boolean DEBUG = false;
 
-    private static List<Integer> EXPANDABLE_STREAMS = Arrays.asList(
+    private static final int[] EXPANDABLE_STREAMS = new int[] {
             AudioManager.STREAM_MUSIC, AudioManager.STREAM_RING,
             AudioManager.STREAM_NOTIFICATION, AudioManager.STREAM_ALARM,
             AudioManager.STREAM_VOICE_CALL, 6 /* BLUETOOTH_SCO */,
-            AudioManager.STREAM_SYSTEM);
+            AudioManager.STREAM_SYSTEM };
+    private static final int EXPANDABLE_STREAMS_MASK = streamsToMask(EXPANDABLE_STREAMS);
 
     private static Object mVolumePanel;
     private static boolean mVolForceRingControl;
     private static ModAudio.StreamLink mRingNotifVolumesLinked;
     private static ModAudio.StreamLink mRingSystemVolumesLinked;
     private static boolean mVolumePanelExpanded;
-    private static Set<String> mVolumePanelExpandedStreams;
+    private static int mVolumePanelExpandedStreams;
     private static boolean mNotificationStreamRowAddedByGb;
     private static int mTimeout;
 
+    // VolumeRow fields resolved once; rows are indexed by stream and the index
+    // is rebuilt only when the dialog's row list changes
+    private static Field mRowsField;
+    private static Field mRowStreamField;
+    private static Field mRowViewField;
+    private static Field mRowSliderField;
+    private static Field mRowIconField;
+    private static Field mRowDefaultStreamField;
+    private static final SparseArray<Object> mRowsByStream = new SparseArray<>();
+    private static List<?> mIndexedRows;
+    private static int mIndexedRowCount = -1;
+
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
     }
@@ -83,9 +98,10 @@ public class ModVolumePanel {
                 if (DEBUG) log("mVolumePanelExpanded set to: " + mVolumePanelExpanded);
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_VOL_EXPANDED_STREAMS)) {
-                mVolumePanelExpandedStreams = new HashSet<>(intent.getStringArrayListExtra(
+                mVolumePanelExpandedStreams = parseStreams(intent.getStringArrayListExtra(
                         GravityBoxSettings.EXTRA_VOL_EXPANDED_STREAMS));
-                if (DEBUG) log("mVolumePanelExpandedStreams set to: " + mVolumePanelExpandedStreams);
+                if (DEBUG) log("mVolumePanelExpandedStreams set to: " +
+                        Integer.toBinaryString(mVolumePanelExpandedStreams));
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_VOL_PANEL_TIMEOUT)) {
                 mTimeout = intent.getIntExtra(GravityBoxSettings.EXTRA_VOL_PANEL_TIMEOUT, 0);
@@ -96,6 +112,13 @@ public class ModVolumePanel {
     public static void init(final XSharedPreferences prefs, final ClassLoader classLoader) {
         try {
             final Class<?> classVolumePanel = XposedHelpers.findClass(CLASS_VOLUME_PANEL, classLoader);
+            final Class<?> classVolumeRow = XposedHelpers.findClass(CLASS_VOLUME_ROW, classLoader);
+            mRowsField = XposedHelpers.findField(classVolumePanel, "mRows");
+            mRowStreamField = XposedHelpers.findField(classVolumeRow, "stream");
+            mRowViewField = XposedHelpers.findField(classVolumeRow, "view");
+            mRowSliderField = XposedHelpers.findField(classVolumeRow, "slider");
+            mRowIconField = XposedHelpers.findField(classVolumeRow, "icon");
+            mRowDefaultStreamField = XposedHelpers.findField(classVolumeRow, "defaultStream");
 
             mVolForceRingControl = prefs.getBoolean(
                     GravityBoxSettings.PREF_KEY_VOL_FORCE_RING_CONTROL, false);
@@ -104,8 +127,9 @@ public class ModVolumePanel {
             mRingSystemVolumesLinked = ModAudio.StreamLink.valueOf(prefs.getString(
                     GravityBoxSettings.PREF_KEY_LINK_RINGER_SYSTEM_VOLUMES, "DEFAULT"));
             mVolumePanelExpanded = prefs.getBoolean(GravityBoxSettings.PREF_KEY_VOL_EXPANDED, false);
-            mVolumePanelExpandedStreams = prefs.getStringSet(GravityBoxSettings.PREF_KEY_VOL_EXPANDED_STREAMS,
-                new HashSet<>(Arrays.asList("3", "2", "4")));
+            mVolumePanelExpandedStreams = parseStreams(prefs.getStringSet(
+                    GravityBoxSettings.PREF_KEY_VOL_EXPANDED_STREAMS,
+                    new HashSet<>(Arrays.asList("3", "2", "4"))));
             mTimeout = prefs.getInt(GravityBoxSettings.PREF_KEY_VOLUME_PANEL_TIMEOUT, 0);
 
             XposedBridge.hookAllConstructors(classVolumePanel, new XC_MethodHook() {
@@ -119,6 +143,13 @@ public class ModVolumePanel {
                 }
             });
 
+            XposedBridge.hookAllMethods(classVolumePanel, "addRow", new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(final MethodHookParam param) {
+                    invalidateRowIndex();
+                }
+            });
+
             XposedHelpers.findAndHookMethod(classVolumePanel, "initDialog", new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(final MethodHookParam param) {
@@ -129,12 +160,12 @@ public class ModVolumePanel {
 
             XC_MethodHook shouldBeVisibleHook = new XC_MethodHook() {
                 @Override
-                protected void afterHookedMethod(final MethodHookParam param) {
-                    int streamType = XposedHelpers.getIntField(param.args[0], "stream");
+                protected void afterHookedMethod(final MethodHookParam param) throws Throwable {
+                    int streamType = mRowStreamField.getInt(param.args[0]);
                     boolean visible = (boolean) param.getResult();
                     if (mVolumePanelExpanded && !Utils.isOxygenOsRom() &&
-                            EXPANDABLE_STREAMS.contains(streamType)) {
-                        param.setResult(mVolumePanelExpandedStreams.contains(String.valueOf(streamType)));
+                            isStreamInMask(EXPANDABLE_STREAMS_MASK, streamType)) {
+                        param.setResult(isStreamInMask(mVolumePanelExpandedStreams, streamType));
                     } else if (streamType == AudioManager.STREAM_NOTIFICATION) {
                         param.setResult(shouldShowNotificationRow(visible));
                     } else if (streamType == AudioManager.STREAM_SYSTEM) {
@@ -162,16 +193,16 @@ public class ModVolumePanel {
                 XposedHelpers.findAndHookMethod(classVolumePanel, "updateRowsH",
                         CLASS_VOLUME_ROW, new XC_MethodHook() {
                     @Override
-                    protected void afterHookedMethod(MethodHookParam param) {
+                    protected void afterHookedMethod(MethodHookParam param) throws Throwable {
                         if (mVolumePanelExpanded && XposedHelpers.getBooleanField(
                                 param.thisObject, "mOpForceExpandState")) {
-                            List<?> rows = (List<?>) XposedHelpers.getObjectField(mVolumePanel, "mRows");
-                            for (Object row : rows) {
-                                int stream = XposedHelpers.getIntField(row, "stream");
-                                if (EXPANDABLE_STREAMS.contains(stream)) {
-                                    ((View)XposedHelpers.getObjectField(row, "view"))
-                                            .setVisibility(mVolumePanelExpandedStreams.contains(
-                                                    String.valueOf(stream)) ? View.VISIBLE : View.GONE);
+                            SparseArray<Object> rowsByStream = getRowsByStream();
+                            for (int stream : EXPANDABLE_STREAMS) {
+                                Object row = rowsByStream.get(stream);
+                                if (row != null) {
+                                    ((View) mRowViewField.get(row)).setVisibility(
+                                            isStreamInMask(mVolumePanelExpandedStreams, stream) ?
+                                                    View.VISIBLE : View.GONE);
                                 }
                             }
                         }
@@ -182,13 +213,13 @@ public class ModVolumePanel {
             XposedHelpers.findAndHookMethod(classVolumePanel, "updateVolumeRowSliderH",
                     CLASS_VOLUME_ROW, boolean.class, int.class, new XC_MethodHook() {
                 @Override
-                protected void afterHookedMethod(final MethodHookParam param) {
-                    int streamType = XposedHelpers.getIntField(param.args[0], "stream");
+                protected void afterHookedMethod(final MethodHookParam param) throws Throwable {
+                    int streamType = mRowStreamField.getInt(param.args[0]);
                     if (streamType == AudioManager.STREAM_NOTIFICATION &&
                             mRingNotifVolumesLinked == ModAudio.StreamLink.UNLINKED) {
-                        View slider = (View) XposedHelpers.getObjectField(param.args[0], "slider");
+                        View slider = (View) mRowSliderField.get(param.args[0]);
                         slider.setEnabled(isRingerSliderEnabled());
-                        View icon = (View) XposedHelpers.getObjectField(param.args[0], "icon");
+                        View icon = (View) mRowIconField.get(param.args[0]);
                         icon.setEnabled(slider.isEnabled());
                     }
                 }
@@ -207,14 +238,63 @@ public class ModVolumePanel {
         }
     }
 
-    private static void prepareNotificationRow() {
-        try {
-            List<?> rows = (List<?>) XposedHelpers.getObjectField(mVolumePanel, "mRows");
+    private static int streamsToMask(int[] streams) {
+        int mask = 0;
+        for (int stream : streams) {
+            mask |= (1 << stream);
+        }
+        return mask;
+    }
+
+    private static int parseStreams(Collection<String> streams) {
+        int mask = 0;
+        if (streams != null) {
+            for (String stream : streams) {
+                try {
+                    int streamType = Integer.parseInt(stream);
+                    if (streamType >= 0 && streamType < Integer.SIZE) {
+                        mask |= (1 << streamType);
+                    }
+                } catch (NumberFormatException e) {
+                    GravityBox.log(TAG, "Invalid stream type: " + stream);
+                }
+            }
+        }
+        return mask;
+    }
+
+    private static boolean isStreamInMask(int mask, int streamType) {
+        return (streamType >= 0 && streamType < Integer.SIZE &&
+                (mask & (1 << streamType)) != 0);
+    }
+
+    private static void invalidateRowIndex() {
+        mIndexedRows = null;
+        mIndexedRowCount = -1;
+    }
+
+    private static SparseArray<Object> getRowsByStream() throws IllegalAccessException {
+        List<?> rows = (List<?>) mRowsField.get(mVolumePanel);
+        if (rows != mIndexedRows || rows.size() != mIndexedRowCount) {
+            mRowsByStream.clear();
             for (Object row : rows) {
-                if (XposedHelpers.getIntField(row, "stream") == AudioManager.STREAM_NOTIFICATION) {
-                    return;
+                int stream = mRowStreamField.getInt(row);
+                if (mRowsByStream.indexOfKey(stream) < 0) {
+                    mRowsByStream.put(stream, row);
                 }
             }
+            mIndexedRows = rows;
+            mIndexedRowCount = rows.size();
+            if (DEBUG) log("Volume row index rebuilt; rows=" + mIndexedRowCount);
+        }
+        return mRowsByStream;
+    }
+
+    private static void prepareNotificationRow() {
+        try {
+            if (getRowsByStream().get(AudioManager.STREAM_NOTIFICATION) != null) {
+                return;
+            }
             XposedHelpers.callMethod(mVolumePanel, "addRow",
                     AudioManager.STREAM_NOTIFICATION,
                     ResourceProxy.getFakeResId("ic_audio_notification"),
@@ -239,13 +319,8 @@ public class ModVolumePanel {
 
     private static boolean isRingerSliderEnabled() {
         try {
-            List<?> rows = (List<?>) XposedHelpers.getObjectField(mVolumePanel, "mRows");
-            for (Object row : rows) {
-                if (XposedHelpers.getIntField(row, "stream") == AudioManager.STREAM_RING) {
-                    return ((View)XposedHelpers.getObjectField(row, "slider")).isEnabled();
-                }
-            }
-            return true;
+            Object row = getRowsByStream().get(AudioManager.STREAM_RING);
+            return (row == null || ((View) mRowSliderField.get(row)).isEnabled());
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
             return true;
@@ -254,14 +329,14 @@ public class ModVolumePanel {
 
     private static void updateDefaultStream() {
         try {
-            List<?> rows = (List<?>) XposedHelpers.getObjectField(mVolumePanel, "mRows");
-            for (Object row : rows) {
-                int streamType = XposedHelpers.getIntField(row, "stream");
-                if (streamType == AudioManager.STREAM_MUSIC) {
-                    XposedHelpers.setBooleanField(row, "defaultStream", !mVolForceRingControl);
-                } else if (streamType == AudioManager.STREAM_RING) {
-                    XposedHelpers.setBooleanField(row, "defaultStream", mVolForceRingControl);
-                }
+            SparseArray<Object> rowsByStream = getRowsByStream();
+            Object row = rowsByStream.get(AudioManager.STREAM_MUSIC);
+            if (row != null) {
+                mRowDefaultStreamField.setBoolean(row, !mVolForceRingControl);
+            }
+            row = rowsByStream.get(AudioManager.STREAM_RING);
+            if (row != null) {
+                mRowDefaultStreamField.setBoolean(row, mVolForceRingControl);
             }
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
@@ -15,12 +15,16 @@
 package com.ceco.r.gravitybox;
 
 import android.content.Context;
+import android.content.res.AssetManager;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.regex.Pattern;
 
 import de.robv.android.xposed.XC_MethodHook;
@@ -35,11 +39,24 @@ public class ResourceProxy {
         XposedBridge.log(TAG + ": " + message);
     }
 
-    private static SparseArray<ResourceSpec> sCache = new SparseArray<>();
-    private static int getCacheKey(String pkgName, int resId) {
-        return (pkgName + "_" + resId).hashCode();
+    // Lookups are cached per AssetManager since package IDs (e.g. 0x7f) are only unique
+    // within one. Negative results are cached as well so a resource that is not intercepted
+    // resolves no names after its first lookup.
+    private static final Object NOT_INTERCEPTED = new Object();
+    private static final Map<AssetManager, CacheScope> sCache = new WeakHashMap<>();
+
+    private static final class CacheScope {
+        // package ID (resId >>> 24) -> whether any interceptor supports the package
+        final SparseBooleanArray packages = new SparseBooleanArray();
+        // resId -> ResourceSpec or NOT_INTERCEPTED
+        final SparseArray<Object> entries = new SparseArray<>();
     }
 
+    // Param of the call whose result was already provided by before hook.
+    // Compared by identity in after hook so no per-call extras Bundle is needed.
+    private static final ThreadLocal<XC_MethodHook.MethodHookParam> sEarlyReturnParam =
+            new ThreadLocal<>();
+
     public static class ResourceSpec {
         private Interceptor interceptor;
         public int resId;
@@ -94,16 +111,25 @@ public class ResourceProxy {
         Object onGetFakeResource(Context gbContext, int fakeResId) { return null; }
     }
 
+    private static final int FAKE_RES_ID_PACKAGE = 0x7e000000;
+
     static int getFakeResId(String resourceName) {
-        return 0x7e000000 | (resourceName.hashCode() & 0x00ffffff);
+        return FAKE_RES_ID_PACKAGE | (resourceName.hashCode() & 0x00ffffff);
+    }
+
+    private static boolean isFakeResId(int resId) {
+        return (resId & 0xff000000) == FAKE_RES_ID_PACKAGE;
     }
 
+    private static Context sSystemContext;
     private static Context getGbContext(Configuration config) {
         try {
-            Class<?> atClass = XposedHelpers.findClass("android.app.ActivityThread", null);
-            Object currentAt = XposedHelpers.callStaticMethod(atClass, "currentActivityThread");
-            Context systemContext = (Context) XposedHelpers.callMethod(currentAt, "getSystemContext");
-            return Utils.getGbContext(systemContext, config);
+            if (sSystemContext == null) {
+                Class<?> atClass = XposedHelpers.findClass("android.app.ActivityThread", null);
+                Object currentAt = XposedHelpers.callStaticMethod(atClass, "currentActivityThread");
+                sSystemContext = (Context) XposedHelpers.callMethod(currentAt, "getSystemContext");
+            }
+            return Utils.getGbContext(sSystemContext, config);
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
             return null;
@@ -111,6 +137,7 @@ public class ResourceProxy {
     }
 
     private final List<Interceptor> mInterceptors = new ArrayList<>();
+    private final SparseArray<Interceptor> mFakeResIdInterceptors = new SparseArray<>();
 
     ResourceProxy() {
         createIntegerHook();
@@ -126,10 +153,29 @@ public class ResourceProxy {
         synchronized (mInterceptors) {
             if (!mInterceptors.contains(interceptor)) {
                 mInterceptors.add(interceptor);
+                for (int fakeResId : interceptor.supportedFakeResIds) {
+                    if (mFakeResIdInterceptors.get(fakeResId) == null) {
+                        mFakeResIdInterceptors.put(fakeResId, interceptor);
+                    }
+                }
+                synchronized (sCache) {
+                    sCache.clear();
+                }
             }
         }
     }
 
+    private boolean isPackageSupported(String packageName) {
+        synchronized (mInterceptors) {
+            for (Interceptor i : mInterceptors) {
+                if (i.packageNamePattern.matcher(packageName).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private Interceptor findInterceptorForFramework() {
         synchronized (mInterceptors) {
             return mInterceptors.stream().filter((i) -> i.isFramework)
@@ -155,10 +201,9 @@ public class ResourceProxy {
     }
 
     private Interceptor findInterceptorForFakeResourceId(int fakeResId) {
+        if (!isFakeResId(fakeResId)) return null;
         synchronized (mInterceptors) {
-            return mInterceptors.stream().filter((i) ->
-                    i.supportedFakeResIds.contains(fakeResId))
-                    .findFirst().orElse(null);
+            return mFakeResIdInterceptors.get(fakeResId);
         }
     }
 
@@ -175,13 +220,14 @@ public class ResourceProxy {
                 if (value != null) {
                     if (DEBUG) log("onGetFakeResource: resId=" + resId + "; value=" + value);
                     param.setResult(value);
-                    param.getExtra().putBoolean("returnEarly", true);
+                    sEarlyReturnParam.set(param);
                 }
             }
         }
         @Override
         protected void afterHookedMethod(MethodHookParam param) {
-            if (param.getExtra().getBoolean("returnEarly")) {
+            if (sEarlyReturnParam.get() == param) {
+                sEarlyReturnParam.set(null);
                 if (DEBUG) log(param.method.getName() + " after hook suppressed by before hook");
                 return;
             }
@@ -197,24 +243,49 @@ public class ResourceProxy {
     };
 
     private ResourceSpec getOrCreateResourceSpec(Resources res, int resId, Object value) {
-        String pkgName = getResourcePackageName(res, resId);
-        if (pkgName == null) return null;
+        final int packageId = resId >>> 24;
+        final CacheScope scope;
+        synchronized (sCache) {
+            final AssetManager assets = res.getAssets();
+            CacheScope s = sCache.get(assets);
+            if (s == null) {
+                s = new CacheScope();
+                sCache.put(assets, s);
+            }
+            scope = s;
 
-        int cacheKey = getCacheKey(pkgName, resId);
-        if (sCache.get(cacheKey) != null) {
-            sCache.get(cacheKey).value = value;
-            return sCache.get(cacheKey);
+            final int pkgIdx = scope.packages.indexOfKey(packageId);
+            if (pkgIdx >= 0 && !scope.packages.valueAt(pkgIdx)) {
+                return null;
+            }
+            final Object cached = scope.entries.get(resId);
+            if (cached == NOT_INTERCEPTED) {
+                return null;
+            } else if (cached != null) {
+                ((ResourceSpec) cached).value = value;
+                return (ResourceSpec) cached;
+            }
         }
 
-        String resName = getResourceEntryName(res, resId);
-        if (resName == null) return null;
-
-        Interceptor i = findInterceptorForResource(pkgName, resName);
-        if (i == null) return null;
+        // first lookup of this resource in this scope
+        ResourceSpec spec = null;
+        String pkgName = getResourcePackageName(res, resId);
+        boolean pkgSupported = pkgName != null && isPackageSupported(pkgName);
+        if (pkgSupported) {
+            String resName = getResourceEntryName(res, resId);
+            Interceptor i = findInterceptorForResource(pkgName, resName);
+            if (i != null) {
+                spec = new ResourceSpec(i, resId, resName, value);
+                if (DEBUG) log("New " + spec.toString());
+            }
+        }
 
-        ResourceSpec spec = new ResourceSpec(i, resId, resName, value);
-        if (DEBUG) log("New " + spec.toString());
-        sCache.put(cacheKey, spec);
+        synchronized (sCache) {
+            if (pkgName != null) {
+                scope.packages.put(packageId, pkgSupported);
+            }
+            scope.entries.put(resId, spec != null ? spec : NOT_INTERCEPTED);
+        }
         return spec;
     }
 
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.r.gravitybox;
+
+import android.content.Context;
+import android.content.Intent;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.robv.android.xposed.XposedBridge;
+
+/**
+ * Per-process torch controller owned directly by whichever process toggles the torch
+ * (system_server for hardware keys and shortcuts, SystemUI for the tile).
+ * Flash camera ID and torch status are cached so that toggling doesn't need to
+ * enumerate cameras, wait for the initial torch callback or start a service.
+ * TorchService is started only to show the ongoing notification and handle auto-off.
+ */
+public class TorchController {
+    private static final String TAG = "GB:TorchController";
+    private static final boolean DEBUG = false;
+
+    private static void log(String message) {
+        XposedBridge.log(TAG + ": " + message);
+    }
+
+    public interface Listener {
+        void onTorchStatusChanged(int status);
+    }
+
+    private static TorchController sInstance;
+
+    public static synchronized TorchController getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new TorchController(appContext != null ? appContext : context);
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+    private final CameraManager mCameraManager;
+    private final List<Listener> mListeners = new ArrayList<>();
+    private final Set<String> mKnownCameraIds = new HashSet<>();
+    private String mCameraId;
+    private boolean mCameraIdResolved;
+    private volatile int mTorchStatus = TorchService.TORCH_STATUS_UNKNOWN;
+    // toggle requested before initial torch status was reported
+    private boolean mTogglePending;
+    // torch was turned on by this controller; notification service is started once it's on
+    private boolean mTorchOnRequested;
+
+    private final CameraManager.TorchCallback mTorchCallback =
+            new CameraManager.TorchCallback() {
+        @Override
+        public void onTorchModeUnavailable(String cameraId) {
+            if (DEBUG) log("onTorchModeUnavailable: cameraId=" + cameraId);
+            if (TextUtils.equals(cameraId, getCameraId())) {
+                setTorchStatus(TorchService.TORCH_STATUS_ERROR);
+            }
+        }
+        @Override
+        public void onTorchModeChanged(String cameraId, boolean enabled) {
+            if (DEBUG) log("onTorchModeChanged: cameraId=" + cameraId +
+                    "; enabled=" + enabled);
+            if (TextUtils.equals(cameraId, getCameraId())) {
+                setTorchStatus(enabled ? TorchService.TORCH_STATUS_ON :
+                        TorchService.TORCH_STATUS_OFF);
+            }
+        }
+    };
+
+    private final CameraManager.AvailabilityCallback mAvailabilityCallback =
+            new CameraManager.AvailabilityCallback() {
+        @Override
+        public void onCameraAvailable(String cameraId) {
+            // cameras also become (un)available when opened by apps;
+            // only a camera we haven't enumerated yet invalidates the cached ID
+            if (mCameraIdResolved && !mKnownCameraIds.contains(cameraId)) {
+                if (DEBUG) log("New camera available: " + cameraId);
+                invalidateCameraId();
+            }
+        }
+    };
+
+    private TorchController(Context context) {
+        mContext = context;
+        mCameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        final Handler handler = new Handler(Looper.getMainLooper());
+        mCameraManager.registerAvailabilityCallback(mAvailabilityCallback, handler);
+        mCameraManager.registerTorchCallback(mTorchCallback, handler);
+        if (DEBUG) log("created");
+    }
+
+    public synchronized String getCameraId() {
+        if (!mCameraIdResolved) {
+            try {
+                String[] ids = mCameraManager.getCameraIdList();
+                mKnownCameraIds.clear();
+                mKnownCameraIds.addAll(Arrays.asList(ids));
+                mCameraId = null;
+                for (String id : ids) {
+                    CameraCharacteristics c = mCameraManager.getCameraCharacteristics(id);
+                    Boolean flashAvailable = c.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+                    Integer lensFacing = c.get(CameraCharacteristics.LENS_FACING);
+                    if (flashAvailable != null && flashAvailable && lensFacing != null &&
+                            lensFacing == CameraCharacteristics.LENS_FACING_BACK) {
+                        mCameraId = id;
+                    }
+                }
+                mCameraIdResolved = true;
+                if (DEBUG) log("getCameraId: " + mCameraId);
+            } catch (Exception e) {
+                GravityBox.log(TAG, "Error resolving flash camera: ", e);
+            }
+        }
+        return mCameraId;
+    }
+
+    private synchronized void invalidateCameraId() {
+        mCameraIdResolved = false;
+        mCameraId = null;
+    }
+
+    public int getTorchStatus() {
+        return mTorchStatus;
+    }
+
+    public void toggleTorch() {
+        // no torch callback ever arrives without a flash camera so don't wait for one
+        if (getCameraId() == null) {
+            GravityBox.log(TAG, "toggleTorch: no flash camera available");
+            setTorchStatus(TorchService.TORCH_STATUS_ERROR);
+            return;
+        }
+        final boolean enable;
+        synchronized (this) {
+            final int status = mTorchStatus;
+            if (status == TorchService.TORCH_STATUS_UNKNOWN) {
+                if (DEBUG) log("toggleTorch: status unknown yet; toggle postponed");
+                mTogglePending = true;
+                return;
+            }
+            enable = status != TorchService.TORCH_STATUS_ON;
+        }
+        try {
+            setTorchMode(enable);
+        } catch (Exception e) {
+            GravityBox.log(TAG, "Error toggling torch: ", e);
+        }
+    }
+
+    public void setTorchMode(boolean enabled) throws CameraAccessException {
+        final String cameraId = getCameraId();
+        if (cameraId == null) {
+            setTorchStatus(TorchService.TORCH_STATUS_ERROR);
+            throw new IllegalStateException("No flash camera available");
+        }
+        synchronized (this) {
+            mTorchOnRequested = enabled;
+        }
+        try {
+            mCameraManager.setTorchMode(cameraId, enabled);
+        } catch (IllegalArgumentException e) {
+            // cached camera is gone; enumerate again and retry once
+            invalidateCameraId();
+            final String newCameraId = getCameraId();
+            if (newCameraId == null) {
+                setTorchStatus(TorchService.TORCH_STATUS_ERROR);
+                throw new IllegalStateException("No flash camera available");
+            }
+            mCameraManager.setTorchMode(newCameraId, enabled);
+        }
+    }
+
+    private void setTorchStatus(int status) {
+        final boolean togglePending;
+        final boolean torchTurnedOn;
+        synchronized (this) {
+            mTorchStatus = status;
+            togglePending = mTogglePending && status != TorchService.TORCH_STATUS_ERROR;
+            mTogglePending = false;
+            torchTurnedOn = mTorchOnRequested && status == TorchService.TORCH_STATUS_ON;
+            if (status != TorchService.TORCH_STATUS_OFF) {
+                mTorchOnRequested = false;
+            }
+        }
+        if (togglePending) {
+            toggleTorch();
+        }
+        if (torchTurnedOn) {
+            startNotificationService();
+        }
+        synchronized (mListeners) {
+            for (Listener l : new ArrayList<>(mListeners)) {
+                l.onTorchStatusChanged(status);
+            }
+        }
+    }
+
+    private void startNotificationService() {
+        try {
+            Intent intent = new Intent(TorchService.ACTION_TORCH_STARTED);
+            intent.setClassName(TorchService.class.getPackage().getName(), TorchService.class.getName());
+            mContext.startService(intent);
+        } catch (Throwable t) {
+            GravityBox.log(TAG, "Error starting torch notification service: ", t);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        synchronized (mListeners) {
+            if (!mListeners.contains(listener)) {
+                mListeners.add(listener);
+            }
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        synchronized (mListeners) {
+            mListeners.remove(listener);
+        }
+    }
+}
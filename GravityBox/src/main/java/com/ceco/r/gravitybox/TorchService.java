@@ -24,12 +24,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.hardware.camera2.CameraCharacteristics;
-import android.hardware.camera2.CameraManager;
-import android.os.Bundle;
 import android.os.IBinder;
-import android.os.ResultReceiver;
-import android.text.TextUtils;
 import android.util.Log;
 
 public class TorchService extends Service {
@@ -37,56 +32,22 @@ public class TorchService extends Service {
     private static final boolean DEBUG = false;
 
     public static final String ACTION_TOGGLE_TORCH = "gravitybox.intent.action.TOGGLE_TORCH";
-    public static final String ACTION_TORCH_STATUS_CHANGED = "gravitybox.intent.action.TORCH_STATUS_CHANGED";
-    public static final String ACTION_TORCH_GET_STATUS = "gravitybox.intent.action.TORCH_GET_STATUS";
+    public static final String ACTION_TORCH_STARTED = "gravitybox.intent.action.TORCH_STARTED";
     private static final String ACTION_TORCH_TIMEOUT = "gravitybox.intent.action.TORCH_TIMEOUT";
-    public static final String EXTRA_TORCH_STATUS = "torchStatus";
     public static final int TORCH_STATUS_OFF = 0;
     public static final int TORCH_STATUS_ON = 1;
     public static final int TORCH_STATUS_ERROR = -1;
     public static final int TORCH_STATUS_UNKNOWN = -2;
 
-    private CameraManager mCameraManager;
-    private String mCameraId;
-    private int mTorchStatus;
+    private TorchController mTorchController;
     private Notification mTorchNotif;
-    private Intent mStartIntent;
+    private boolean mIsForeground;
     private AlarmManager mAlarmManager;
     private PendingIntent mPendingIntent;
 
-    private final CameraManager.TorchCallback mTorchCallback =
-            new CameraManager.TorchCallback() {
-        @Override
-        public void onTorchModeUnavailable(String cameraId) {
-            if (DEBUG) Log.d(TAG, "onTorchModeUnavailable: cameraId=" + cameraId);
-            if (TextUtils.equals(cameraId, getCameraId())) {
-                resetTimeout();
-                mTorchStatus = TORCH_STATUS_ERROR;
-                maybeProcessStartIntent();
-                TorchService.this.stopForeground(true);
-                broadcastStatus();
-                stopSelf();
-            }
-        }
-        @Override
-        public void onTorchModeChanged(String cameraId, boolean enabled) {
-            if (DEBUG) Log.d(TAG, "onTorchModeChanged: cameraId=" + cameraId +
-                    "; enabled=" + enabled);
-            if (TextUtils.equals(cameraId, getCameraId())) {
-                resetTimeout();
-                if (enabled) {
-                    mTorchStatus = TORCH_STATUS_ON;
-                    TorchService.this.startForeground(2, mTorchNotif);
-                    broadcastStatus();
-                    setupTimeout();
-                } else {
-                    mTorchStatus = TORCH_STATUS_OFF;
-                    TorchService.this.stopForeground(true);
-                    broadcastStatus();
-                }
-                maybeProcessStartIntent();
-            }
-        }
+    private final TorchController.Listener mTorchListener = status -> {
+        if (DEBUG) Log.d(TAG, "onTorchStatusChanged: status=" + status);
+        updateForegroundState(status);
     };
 
     @Override
@@ -98,8 +59,6 @@ public class TorchService extends Service {
     public void onCreate() {
         super.onCreate();
 
-        mTorchStatus = TORCH_STATUS_UNKNOWN;
-
         Intent intent = new Intent(this, TorchService.class);
         intent.setAction(ACTION_TOGGLE_TORCH);
         PendingIntent stopIntent = PendingIntent.getService(this, 0, intent, 0);
@@ -116,8 +75,8 @@ public class TorchService extends Service {
 
         mAlarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
 
-        mCameraManager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
-        mCameraManager.registerTorchCallback(mTorchCallback, null);
+        mTorchController = TorchController.getInstance(this);
+        mTorchController.addListener(mTorchListener);
 
         if (DEBUG) Log.d(TAG, "onCreate");
     }
@@ -125,13 +84,17 @@ public class TorchService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent != null) {
-            if (ACTION_TOGGLE_TORCH.equals(intent.getAction()) ||
-                    ACTION_TORCH_GET_STATUS.equals(intent.getAction())) {
-                mStartIntent = intent;
-                maybeProcessStartIntent();
+            if (ACTION_TOGGLE_TORCH.equals(intent.getAction())) {
+                if (DEBUG) Log.d(TAG, "Received toggle torch intent");
+                mTorchController.toggleTorch();
+                return START_NOT_STICKY;
+            } else if (ACTION_TORCH_STARTED.equals(intent.getAction())) {
+                if (DEBUG) Log.d(TAG, "Received torch started intent");
+                updateForegroundState(mTorchController.getTorchStatus());
                 return START_NOT_STICKY;
             } else if (ACTION_TORCH_TIMEOUT.equals(intent.getAction())) {
                 if (DEBUG) Log.d(TAG, "Received torch timeout intent");
+                mPendingIntent = null;
                 setTorchOff();
                 return START_NOT_STICKY;
             }
@@ -140,89 +103,34 @@ public class TorchService extends Service {
         return START_NOT_STICKY;
     }
 
-    private void maybeProcessStartIntent() {
-        if (mStartIntent == null || mTorchStatus == TORCH_STATUS_UNKNOWN) return;
-
-        if (ACTION_TOGGLE_TORCH.equals(mStartIntent.getAction())) {
-            if (DEBUG) Log.d(TAG, "maybeProcessStartIntent: ACTION_TOGGLE_TORCH");
-            toggleTorch();
-        } else if (ACTION_TORCH_GET_STATUS.equals(mStartIntent.getAction())) {
-            if (DEBUG) Log.d(TAG, "maybeProcessStartIntent: " +
-                    "ACTION_TORCH_GET_STATUS: mTorchStatus=" + mTorchStatus);
-            ResultReceiver receiver = mStartIntent.getParcelableExtra("receiver");
-            Bundle data = new Bundle();
-            data.putInt(EXTRA_TORCH_STATUS, mTorchStatus);
-            receiver.send(0, data);
-        }
-        mStartIntent = null;
-    }
-
-    private String getCameraId() {
-        if (mCameraId == null) {
-            try {
-                String[] ids = mCameraManager.getCameraIdList();
-                for (String id : ids) {
-                    CameraCharacteristics c = mCameraManager.getCameraCharacteristics(id);
-                    Boolean flashAvailable = c.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
-                    Integer lensFacing = c.get(CameraCharacteristics.LENS_FACING);
-                    if (flashAvailable != null && flashAvailable && lensFacing != null && 
-                            lensFacing == CameraCharacteristics.LENS_FACING_BACK) {
-                        mCameraId = id;
-                    }
-                }
-                if (DEBUG) Log.d(TAG, "getCameraId: " + mCameraId);
-            } catch (Exception e) {
-                e.printStackTrace();
-                mTorchStatus = TORCH_STATUS_ERROR;
-                broadcastStatus();
-                stopSelf();
+    // service only lives while torch is on to keep ongoing notification and auto-off timeout
+    private void updateForegroundState(int status) {
+        if (status == TORCH_STATUS_ON) {
+            if (!mIsForeground) {
+                startForeground(2, mTorchNotif);
+                mIsForeground = true;
+                setupTimeout();
+            }
+        } else if (status != TORCH_STATUS_UNKNOWN) {
+            resetTimeout();
+            if (mIsForeground) {
+                stopForeground(true);
+                mIsForeground = false;
             }
-        }
-        return mCameraId;
-    }
-
-    private synchronized void toggleTorch() {
-        if (mTorchStatus == TORCH_STATUS_OFF) {
-            setTorchOn();
-        } else if (mTorchStatus == TORCH_STATUS_ON) {
-            setTorchOff();
-        }
-    }
-
-    private synchronized void setTorchOn() {
-        if (mTorchStatus != TORCH_STATUS_OFF) return;
-        try {
-            mCameraManager.setTorchMode(getCameraId(), true);
-            if (DEBUG) Log.d(TAG, "setTorchOn");
-        } catch (Exception e) {
-            e.printStackTrace();
-            mTorchStatus = TORCH_STATUS_ERROR;
-            broadcastStatus();
             stopSelf();
         }
     }
 
-    private synchronized void setTorchOff() {
-        if (mTorchStatus != TORCH_STATUS_ON) return;
+    private void setTorchOff() {
         try {
-            mCameraManager.setTorchMode(getCameraId(), false);
+            mTorchController.setTorchMode(false);
             if (DEBUG) Log.d(TAG, "setTorchOff");
         } catch (Exception e) {
             e.printStackTrace();
-            mTorchStatus = TORCH_STATUS_ERROR;
-            stopForeground(true);
-            broadcastStatus();
-            stopSelf();
+            updateForegroundState(TORCH_STATUS_ERROR);
         }
     }
 
-    private void broadcastStatus() {
-        Intent i = new Intent(ACTION_TORCH_STATUS_CHANGED);
-        i.putExtra(EXTRA_TORCH_STATUS, mTorchStatus);
-        sendBroadcast(i);
-        if (DEBUG) Log.d(TAG, "broadcastStatus: mTorchStatus=" + mTorchStatus);
-    }
-
     private void setupTimeout() {
         SharedPreferences prefs = SettingsManager.getInstance(this).getMainPrefs();
         int torchTimeout = prefs.getInt(GravityBoxSettings.PREF_KEY_TORCH_AUTO_OFF, 10)*60*1000;
@@ -245,13 +153,10 @@ public class TorchService extends Service {
     @Override
     public void onDestroy() {
         if (DEBUG) Log.d(TAG, "onDestroy");
-        setTorchOff();
         resetTimeout();
-        mCameraManager.unregisterTorchCallback(mTorchCallback);
-        mCameraId = null;
-        mCameraManager = null;
+        mTorchController.removeListener(mTorchListener);
+        mTorchController = null;
         mTorchNotif = null;
-        mStartIntent = null;
         mAlarmManager = null;
         super.onDestroy();
     }
@@ -15,6 +15,9 @@
 package com.ceco.r.gravitybox;
 
 import de.robv.android.xposed.XposedHelpers;
+
+import com.ceco.r.gravitybox.managers.NavigationModeMonitor;
+
 import android.annotation.SuppressLint;
 import android.app.ActivityManager;
 import android.app.admin.DevicePolicyManager;
@@ -33,12 +36,12 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.LocaleList;
 import android.os.Looper;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.os.Vibrator;
 import android.provider.ContactsContract.Contacts;
-import android.provider.Settings;
 import android.telecom.TelecomManager;
 import android.telephony.TelephonyManager;
 import android.util.DisplayMetrics;
@@ -97,6 +100,38 @@ public class Utils {
 
     // GB Context
     private static Context mGbContext;
+    // Most recently used configuration contexts, shared process-wide.
+    // Entries for configurations no longer in use get evicted by newer ones.
+    private static final GbConfigContext[] mGbConfigContexts = new GbConfigContext[4];
+
+    private static class GbConfigContext {
+        final int densityDpi;
+        final int uiModeNight;
+        final int orientation;
+        final int smallestScreenWidthDp;
+        final float fontScale;
+        final LocaleList locales;
+        final Context context;
+
+        GbConfigContext(Configuration config, Context context) {
+            this.densityDpi = config.densityDpi;
+            this.uiModeNight = config.uiMode & Configuration.UI_MODE_NIGHT_MASK;
+            this.orientation = config.orientation;
+            this.smallestScreenWidthDp = config.smallestScreenWidthDp;
+            this.fontScale = config.fontScale;
+            this.locales = config.getLocales();
+            this.context = context;
+        }
+
+        boolean matches(Configuration config) {
+            return densityDpi == config.densityDpi &&
+                    uiModeNight == (config.uiMode & Configuration.UI_MODE_NIGHT_MASK) &&
+                    orientation == config.orientation &&
+                    smallestScreenWidthDp == config.smallestScreenWidthDp &&
+                    fontScale == config.fontScale &&
+                    locales.equals(config.getLocales());
+        }
+    }
 
     public static synchronized Context getGbContext(Context context, Configuration config) throws Throwable {
         if (mGbContext == null) {
@@ -104,7 +139,27 @@ public class Utils {
                     Context.CONTEXT_IGNORE_SECURITY);
             mGbContext = mGbContext.createDeviceProtectedStorageContext();
         }
-        return (config == null ? mGbContext : mGbContext.createConfigurationContext(config));
+        return (config == null ? mGbContext : getGbConfigContext(config));
+    }
+
+    private static Context getGbConfigContext(Configuration config) {
+        final GbConfigContext[] cache = mGbConfigContexts;
+        int index = cache.length - 1;
+        GbConfigContext entry = null;
+        for (int i = 0; i < cache.length; i++) {
+            if (cache[i] == null || cache[i].matches(config)) {
+                entry = cache[i];
+                index = i;
+                break;
+            }
+        }
+        if (entry == null) {
+            entry = new GbConfigContext(config, mGbContext.createConfigurationContext(config));
+        }
+        // move to front so that least recently used entry is evicted first
+        System.arraycopy(cache, 0, cache, 1, index);
+        cache[0] = entry;
+        return entry.context;
     }
 
     public static synchronized Context getGbContext(Context context) throws Throwable {
@@ -435,9 +490,7 @@ public class Utils {
 
     public static boolean isNavbarGestural(Context ctx) {
         try {
-            int mode = Integer.parseInt(Settings.Secure.getString(
-                    ctx.getContentResolver(), "navigation_mode"));
-            return (mode == 2);
+            return NavigationModeMonitor.getInstance(ctx).isGestural();
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
             return false;
@@ -18,6 +18,8 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -51,10 +53,12 @@ public class BroadcastMediator {
     private final List<Subscriber> mSubscribers;
     private final IntentFilter mIntentFilter;
     private boolean mInternalReceiverRegistered;
+    private final Handler mMainHandler;
 
     BroadcastMediator() {
         mSubscribers = new ArrayList<>();
         mIntentFilter = new IntentFilter();
+        mMainHandler = new Handler(Looper.getMainLooper());
         if (DEBUG) log("BroadcastMediator created");
     }
 
@@ -124,20 +128,43 @@ public class BroadcastMediator {
         }
     }
 
+    /**
+     * Dispatches intent directly to subscribers of this process skipping system broadcast delivery.
+     * Subscribers are always notified asynchronously on main thread as they would be
+     * for a regular broadcast, even when called from main thread.
+     * @param context - context passed to subscribers
+     * @param intent - intent to dispatch
+     * @return false if there is no subscriber for intent action in this process
+     */
+    public boolean dispatchLocal(Context context, Intent intent) {
+        synchronized (mSubscribers) {
+            if (mSubscribers.stream().noneMatch(s -> s.actions.contains(intent.getAction()))) {
+                return false;
+            }
+        }
+        if (DEBUG) log("dispatchLocal: action=" + intent.getAction());
+        mMainHandler.post(() -> notifySubscribers(context, intent));
+        return true;
+    }
+
+    private void notifySubscribers(Context context, Intent intent) {
+        synchronized (mSubscribers) {
+            List<Receiver> toNotify = mSubscribers.stream()
+                    .filter(s -> s.actions.contains(intent.getAction()))
+                    .map(s -> s.receiver)
+                    .collect(Collectors.toList());
+            toNotify.forEach(r -> {
+                if (DEBUG) log("Notifying listener: " + r +
+                        "; action=" + intent.getAction());
+                r.onBroadcastReceived(context, intent);
+            });
+        }
+    }
+
     private BroadcastReceiver mReceiverInternal = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            synchronized (mSubscribers) {
-                List<Receiver> toNotify = mSubscribers.stream()
-                        .filter(s -> s.actions.contains(intent.getAction()))
-                        .map(s -> s.receiver)
-                        .collect(Collectors.toList());
-                toNotify.forEach(r -> {
-                    if (DEBUG) log("Notifying listener: " + r +
-                            "; action=" + intent.getAction());
-                    r.onBroadcastReceived(context, intent);
-                });
-            }
+            notifySubscribers(context, intent);
         }
     };
 
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.managers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+
+import com.ceco.r.gravitybox.GravityBox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.robv.android.xposed.XposedBridge;
+
+/**
+ * Process-wide cache of navigation mode kept up to date by observing
+ * Settings.Secure.navigation_mode and navigation overlay changes.
+ * Queries are plain field reads so it's safe to use from layout and window policy paths.
+ */
+public class NavigationModeMonitor {
+    public static final String TAG = "GB:NavigationModeMonitor";
+    private static final boolean DEBUG = false;
+
+    public static final int NAV_BAR_MODE_3BUTTON = 0;
+    public static final int NAV_BAR_MODE_2BUTTON = 1;
+    public static final int NAV_BAR_MODE_GESTURAL = 2;
+
+    private static final String SETTING_NAVIGATION_MODE = "navigation_mode";
+    private static final String ACTION_OVERLAY_CHANGED = "android.intent.action.OVERLAY_CHANGED";
+
+    private static void log(String msg) {
+        XposedBridge.log(TAG + ": " + msg);
+    }
+
+    public interface Listener {
+        void onNavigationModeChanged(int mode);
+    }
+
+    private static NavigationModeMonitor sInstance;
+
+    public static synchronized NavigationModeMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NavigationModeMonitor(context);
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+    private final List<Listener> mListeners = new ArrayList<>();
+    private volatile int mMode;
+
+    private NavigationModeMonitor(Context context) {
+        mContext = context.getApplicationContext() != null ?
+                context.getApplicationContext() : context;
+        final Handler handler = new Handler(Looper.getMainLooper());
+
+        mMode = readMode();
+
+        mContext.getContentResolver().registerContentObserver(
+                Settings.Secure.getUriFor(SETTING_NAVIGATION_MODE), false,
+                new ContentObserver(handler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        updateMode();
+                    }
+                });
+
+        IntentFilter intentFilter = new IntentFilter(ACTION_OVERLAY_CHANGED);
+        intentFilter.addDataScheme("package");
+        intentFilter.addDataSchemeSpecificPart("android", 0);
+        mContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                updateMode();
+            }
+        }, intentFilter, null, handler);
+
+        if (DEBUG) log("created; mode=" + mMode);
+    }
+
+    private int readMode() {
+        try {
+            String mode = Settings.Secure.getString(
+                    mContext.getContentResolver(), SETTING_NAVIGATION_MODE);
+            return (mode == null ? NAV_BAR_MODE_3BUTTON : Integer.parseInt(mode));
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+            return NAV_BAR_MODE_3BUTTON;
+        }
+    }
+
+    private void updateMode() {
+        final int mode = readMode();
+        if (mode != mMode) {
+            mMode = mode;
+            if (DEBUG) log("Navigation mode changed: " + mode);
+            synchronized (mListeners) {
+                for (Listener l : mListeners) {
+                    l.onNavigationModeChanged(mode);
+                }
+            }
+        }
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    public boolean isGestural() {
+        return (mMode == NAV_BAR_MODE_GESTURAL);
+    }
+
+    public void addListener(Listener listener) {
+        synchronized (mListeners) {
+            if (!mListeners.contains(listener)) {
+                mListeners.add(listener);
+            }
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        synchronized (mListeners) {
+            mListeners.remove(listener);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import com.ceco.r.gravitybox.GravityBox;
 import com.ceco.r.gravitybox.GravityBoxSettings;
 import com.ceco.r.gravitybox.Utils;
 import com.ceco.r.gravitybox.preference.AppPickerPreference;
+import com.ceco.r.gravitybox.shortcuts.ShortcutActionRegistry;
 import com.ceco.r.gravitybox.shortcuts.ShortcutActivity;
 
 import de.robv.android.xposed.XSharedPreferences;
@@ -320,9 +321,8 @@ public class SysUiAppLauncher implements BroadcastMediator.Receiver, SysUiConfig
             if (DEBUG) log("isLaunchBlocked: " + isLaunchBlocked);
 
             if (!isLaunchBlocked) {
-                Intent newIntent = new Intent(intent.getStringExtra(ShortcutActivity.EXTRA_ACTION));
-                newIntent.putExtras(intent);
-                context.sendBroadcast(newIntent);
+                ShortcutActionRegistry.deliverBroadcastShortcut(context, intent,
+                        ShortcutActionRegistry.Host.SYSTEMUI);
             }
         // otherwise start activity dismissing keyguard
         } else {
@@ -14,6 +14,7 @@
  */
 package com.ceco.r.gravitybox.managers;
 
+import java.security.InvalidKeyException;
 import java.security.KeyStore;
 import java.util.HashMap;
 import java.util.List;
@@ -36,9 +37,11 @@ import android.content.Intent;
 import android.hardware.fingerprint.FingerprintManager;
 import android.hardware.fingerprint.FingerprintManager.AuthenticationResult;
 import android.hardware.fingerprint.FingerprintManager.CryptoObject;
+import android.os.AsyncTask;
 import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyProperties;
 import android.widget.Toast;
@@ -47,10 +50,20 @@ import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 
 @SuppressWarnings("deprecation")
-public class SysUiFingerprintLauncher implements BroadcastMediator.Receiver {
+public class SysUiFingerprintLauncher implements BroadcastMediator.Receiver,
+                                                 SysUiKeyguardStateMonitor.Listener {
     private static final String TAG = "GB:FingerprintLauncher";
     private static final boolean DEBUG = false;
     private static final String KEY_NAME = "gravitybox.fingeprint.launcher";
+    // keyguard releases the sensor asynchronously after unlock
+    private static final long KEYGUARD_RELEASE_POLL_MS = 100;
+    private static final long KEYGUARD_RELEASE_TIMEOUT_MS = 1500;
+    private static final long CANCELED_QUICK_RETRY_WINDOW_MS = 2000;
+    private static final long CANCELED_QUICK_RETRY_DELAY_MS = 250;
+    private static final String CIPHER_TRANSFORMATION =
+            KeyProperties.KEY_ALGORITHM_AES + "/" +
+            KeyProperties.BLOCK_MODE_CBC + "/" +
+            KeyProperties.ENCRYPTION_PADDING_PKCS7;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -66,6 +79,8 @@ public class SysUiFingerprintLauncher implements BroadcastMediator.Receiver {
     private boolean mIsPaused;
     private boolean mShowToast;
     private PowerManager mPm;
+    private SysUiKeyguardStateMonitor mKgMonitor;
+    private boolean mUserPresent;
 
     SysUiFingerprintLauncher(Context ctx, XSharedPreferences prefs) throws Throwable {
         if (ctx == null)
@@ -82,10 +97,17 @@ public class SysUiFingerprintLauncher implements BroadcastMediator.Receiver {
         initFingerprintManager();
         initFingerAppMap(prefs);
 
-        SysUiManagers.BroadcastMediator.subscribe(this,
-                Intent.ACTION_SCREEN_OFF,
-                Intent.ACTION_USER_PRESENT,
-                GravityBoxSettings.ACTION_FPL_SETTINGS_CHANGED);
+        mKgMonitor = SysUiManagers.KeyguardMonitor;
+        if (mKgMonitor != null) {
+            mKgMonitor.registerListener(this);
+            SysUiManagers.BroadcastMediator.subscribe(this,
+                    GravityBoxSettings.ACTION_FPL_SETTINGS_CHANGED);
+        } else {
+            SysUiManagers.BroadcastMediator.subscribe(this,
+                    Intent.ACTION_SCREEN_OFF,
+                    Intent.ACTION_USER_PRESENT,
+                    GravityBoxSettings.ACTION_FPL_SETTINGS_CHANGED);
+        }
     }
 
     @SuppressLint("MissingPermission")
@@ -94,27 +116,43 @@ public class SysUiFingerprintLauncher implements BroadcastMediator.Receiver {
         if (!mFpManager.isHardwareDetected())
             throw new IllegalStateException("Fingerprint hardware not present");
 
+        // crypto object is prepared lazily off the main thread when listening is first requested
+        mFpHandler = new FingerprintHandler();
+
+        if (DEBUG) log("Fingeprint manager initialized");
+    }
+
+    private static Cipher createCipher() throws Exception {
         KeyStore keyStore = KeyStore.getInstance("AndroidKeyStore");
+        keyStore.load(null);
+        Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, getOrCreateKey(keyStore));
+        } catch (InvalidKeyException e) {
+            if (DEBUG) log("createCipher: stored key not usable; regenerating");
+            keyStore.deleteEntry(KEY_NAME);
+            cipher.init(Cipher.ENCRYPT_MODE, getOrCreateKey(keyStore));
+        }
+        return cipher;
+    }
+
+    private static SecretKey getOrCreateKey(KeyStore keyStore) throws Exception {
+        if (keyStore.containsAlias(KEY_NAME)) {
+            SecretKey key = (SecretKey) keyStore.getKey(KEY_NAME, null);
+            if (key != null) {
+                if (DEBUG) log("getOrCreateKey: reusing stored key");
+                return key;
+            }
+        }
         KeyGenerator keyGenerator = KeyGenerator.getInstance(
                 KeyProperties.KEY_ALGORITHM_AES, "AndroidKeyStore");
-        keyStore.load(null);
         keyGenerator.init(new KeyGenParameterSpec.Builder(
                 KEY_NAME, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
                 .setBlockModes(KeyProperties.BLOCK_MODE_CBC)
                 .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_PKCS7)
                 .build());
-        keyGenerator.generateKey();
-
-        Cipher cipher = Cipher.getInstance(
-                KeyProperties.KEY_ALGORITHM_AES + "/" +
-                KeyProperties.BLOCK_MODE_CBC + "/" +
-                KeyProperties.ENCRYPTION_PADDING_PKCS7);
-        SecretKey key = (SecretKey) keyStore.getKey(KEY_NAME, null);
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-
-        mFpHandler = new FingerprintHandler(cipher);
-
-        if (DEBUG) log("Fingeprint manager initialized");
+        if (DEBUG) log("getOrCreateKey: generating new key");
+        return keyGenerator.generateKey();
     }
 
     private void initFingerAppMap(XSharedPreferences prefs) {
@@ -170,11 +208,29 @@ public class SysUiFingerprintLauncher implements BroadcastMediator.Receiver {
         }
     }
 
+    @Override
+    public void onKeyguardStateChanged() {
+        updateUserPresent(mKgMonitor.isInteractive());
+    }
+
+    @Override
+    public void onScreenStateChanged(boolean interactive) {
+        updateUserPresent(interactive);
+    }
+
+    private void updateUserPresent(boolean interactive) {
+        final boolean present = interactive && !mKgMonitor.isShowing();
+        if (present != mUserPresent) {
+            mUserPresent = present;
+            onUserPresentChanged(present);
+        }
+    }
+
     private void onUserPresentChanged(boolean present) {
         if (DEBUG) log("onUserPresentChanged: present=" + present);
         if (present) {
             mIsPaused = false;
-            mFpHandler.startListeningDelayed(500);
+            mFpHandler.postStartListening();
         } else {
             mFpHandler.stopListening();
         }
@@ -217,14 +273,41 @@ public class SysUiFingerprintLauncher implements BroadcastMediator.Receiver {
 
     private class FingerprintHandler extends FingerprintManager.AuthenticationCallback {
         private CryptoObject mCryptoObject;
+        private boolean mCryptoPreparing;
+        private boolean mStartPending;
         private CancellationSignal mCancellationSignal;
         private Handler mHandler;
+        private long mStartRequestedAt;
+        private long mListeningStartedAt;
+        private boolean mQuickRetryDone;
 
-        private FingerprintHandler(Cipher cipher) {
-            mCryptoObject = new CryptoObject(cipher);
+        private FingerprintHandler() {
             mHandler = new Handler();
         }
 
+        private void prepareCryptoObject() {
+            if (mCryptoPreparing) return;
+            mCryptoPreparing = true;
+            AsyncTask.execute(() -> {
+                CryptoObject cryptoObject = null;
+                try {
+                    cryptoObject = new CryptoObject(createCipher());
+                } catch (Throwable t) {
+                    GravityBox.log(TAG, "Error preparing crypto object: ", t);
+                }
+                final CryptoObject result = cryptoObject;
+                mHandler.post(() -> {
+                    mCryptoPreparing = false;
+                    mCryptoObject = result;
+                    if (DEBUG) log("prepareCryptoObject: ready=" + (result != null));
+                    if (result != null && mStartPending) {
+                        mStartPending = false;
+                        startListening();
+                    }
+                });
+            });
+        }
+
         @SuppressLint("MissingPermission")
         private void startListening() {
             if (!mPm.isInteractive()) {
@@ -235,13 +318,27 @@ public class SysUiFingerprintLauncher implements BroadcastMediator.Receiver {
                 if (DEBUG) log("startListening: Already listening");
                 return;
             }
+            if (mCryptoObject == null) {
+                if (DEBUG) log("startListening: waiting for crypto object");
+                mStartPending = true;
+                prepareCryptoObject();
+                return;
+            }
+            if (mKgMonitor != null && mKgMonitor.isFingerprintDetectionRunning() &&
+                    SystemClock.uptimeMillis() - mStartRequestedAt < KEYGUARD_RELEASE_TIMEOUT_MS) {
+                if (DEBUG) log("startListening: waiting for keyguard to release the sensor");
+                mHandler.postDelayed(mStartListeningRunnable, KEYGUARD_RELEASE_POLL_MS);
+                return;
+            }
             mCancellationSignal = new CancellationSignal();
             mFpManager.authenticate(mCryptoObject, mCancellationSignal, 0, this, null);
+            mListeningStartedAt = SystemClock.uptimeMillis();
             if (DEBUG) log("FingerprintHandler: listening started");
         }
 
         private void stopListening() {
             mHandler.removeCallbacks(mStartListeningRunnable);
+            mStartPending = false;
             if (mCancellationSignal != null && !mCancellationSignal.isCanceled()) {
                 mCancellationSignal.cancel();
                 if (DEBUG) log("FingerprintHandler: listening stopped");
@@ -249,8 +346,11 @@ public class SysUiFingerprintLauncher implements BroadcastMediator.Receiver {
             mCancellationSignal = null;
         }
 
-        private void startListeningDelayed(long delayMs) {
-            mHandler.postDelayed(mStartListeningRunnable, delayMs);
+        private void postStartListening() {
+            mHandler.removeCallbacks(mStartListeningRunnable);
+            mStartRequestedAt = SystemClock.uptimeMillis();
+            mQuickRetryDone = false;
+            mHandler.post(mStartListeningRunnable);
         }
 
         private void restartListeningDelayed(long delayMs) {
@@ -271,8 +371,16 @@ public class SysUiFingerprintLauncher implements BroadcastMediator.Receiver {
                 return;
 
             switch (errMsgId) {
-                case FingerprintManager.FINGERPRINT_ERROR_HW_UNAVAILABLE:
                 case FingerprintManager.FINGERPRINT_ERROR_CANCELED:
+                    // keyguard may still be tearing down its own session right after unlock
+                    if (!mQuickRetryDone && SystemClock.uptimeMillis() - mListeningStartedAt
+                            < CANCELED_QUICK_RETRY_WINDOW_MS) {
+                        mQuickRetryDone = true;
+                        restartListeningDelayed(CANCELED_QUICK_RETRY_DELAY_MS);
+                        break;
+                    }
+                    // fall through
+                case FingerprintManager.FINGERPRINT_ERROR_HW_UNAVAILABLE:
                     if (mShowToast) {
                         Toast.makeText(mContext, String.format("%s\n%s",
                             TAG, mGbContext.getString(R.string.fingerprint_sensor_unavail)),
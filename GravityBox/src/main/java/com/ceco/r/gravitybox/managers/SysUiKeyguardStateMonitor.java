@@ -287,6 +287,15 @@ public class SysUiKeyguardStateMonitor implements BroadcastMediator.Receiver {
         return mIsKeyguardDisabled;
     }
 
+    public boolean isFingerprintDetectionRunning() {
+        if (mUpdateMonitor == null) return false;
+        try {
+            return (boolean) XposedHelpers.callMethod(mUpdateMonitor, "isFingerprintDetectionRunning");
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
     private Runnable mResetFpRunnable = new Runnable() {
         @Override
         public void run() {
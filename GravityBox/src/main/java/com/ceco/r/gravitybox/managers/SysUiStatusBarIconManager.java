@@ -22,7 +22,9 @@ import de.robv.android.xposed.XposedHelpers;
 
 import android.content.Context;
 import android.graphics.Color;
+import android.os.Looper;
 import android.provider.Settings;
+import android.view.Choreographer;
 
 import com.ceco.r.gravitybox.GravityBox;
 import com.ceco.r.gravitybox.Utils;
@@ -41,6 +43,17 @@ public class SysUiStatusBarIconManager {
     private ColorInfo mColorInfo;
     private List<IconManagerListener> mListeners;
     private Context mContext;
+    private Choreographer mChoreographer;
+    private int mPendingFlags;
+    private int mPendingIconTint;
+    private boolean mFrameScheduled;
+
+    // Tint and alpha change on every animation step of light/dark transitions;
+    // listeners get at most one dispatch per frame carrying the latest values
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> {
+        mFrameScheduled = false;
+        dispatchPendingChanges();
+    };
 
     public interface IconManagerListener {
         void onIconManagerStatusChanged(int flags, ColorInfo colorInfo);
@@ -68,6 +81,7 @@ public class SysUiStatusBarIconManager {
         mColorInfo.alphaSignalCluster = 1;
         mColorInfo.alphaTextAndBattery = 1;
         mColorInfo.iconTint = Color.WHITE;
+        mPendingIconTint = Color.WHITE;
     }
 
     public void registerListener(IconManagerListener listener) {
@@ -88,9 +102,48 @@ public class SysUiStatusBarIconManager {
     }
 
     public void refreshState() {
+        if (mPendingFlags != 0) {
+            dispatchPendingChanges();
+        }
         notifyListeners(FLAG_ALL);
     }
 
+    private void scheduleDispatch(int flags) {
+        mPendingFlags |= flags;
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            dispatchPendingChanges();
+            return;
+        }
+        if (!mFrameScheduled) {
+            if (mChoreographer == null) {
+                mChoreographer = Choreographer.getInstance();
+            }
+            mChoreographer.postFrameCallback(mFrameCallback);
+            mFrameScheduled = true;
+        }
+    }
+
+    private void dispatchPendingChanges() {
+        if (mFrameScheduled) {
+            mChoreographer.removeFrameCallback(mFrameCallback);
+            mFrameScheduled = false;
+        }
+        int flags = mPendingFlags;
+        mPendingFlags = 0;
+        if ((flags & FLAG_ICON_TINT_CHANGED) != 0) {
+            final int iconTint = isOxygenOsNotchHidden() ? Color.WHITE : mPendingIconTint;
+            if (DEBUG) log("dispatchPendingChanges: effective iconTint=" + Integer.toHexString(iconTint));
+            if (mColorInfo.iconTint != iconTint) {
+                mColorInfo.iconTint = iconTint;
+            } else {
+                flags &= ~FLAG_ICON_TINT_CHANGED;
+            }
+        }
+        if (flags != 0) {
+            notifyListeners(flags);
+        }
+    }
+
     public void setIconAlpha(float alphaSignalCluster, float alphaTextAndBattery) {
         if (DEBUG) log("setIconAlpha: alphaSignalCluster=" + alphaSignalCluster +
                 "; alphaTextAndBattery=" + alphaTextAndBattery);
@@ -98,17 +151,16 @@ public class SysUiStatusBarIconManager {
                 mColorInfo.alphaTextAndBattery != alphaTextAndBattery) {
             mColorInfo.alphaSignalCluster = alphaSignalCluster;
             mColorInfo.alphaTextAndBattery = alphaTextAndBattery;
-            notifyListeners(FLAG_ICON_ALPHA_CHANGED);
+            scheduleDispatch(FLAG_ICON_ALPHA_CHANGED);
         }
     }
 
     public void setIconTint(int iconTint) {
         if (DEBUG) log("setIconTint: original iconTint=" + Integer.toHexString(iconTint));
-        iconTint = isOxygenOsNotchHidden() ? Color.WHITE : iconTint;
-        if (DEBUG) log("setIconTint: effective iconTint=" + Integer.toHexString(iconTint));
-        if (mColorInfo.iconTint != iconTint) {
-            mColorInfo.iconTint = iconTint;
-            notifyListeners(FLAG_ICON_TINT_CHANGED);
+        // OxygenOS notch setting may override the tint so let the dispatch re-evaluate it
+        if (mPendingIconTint != iconTint || Utils.isOxygenOsRom()) {
+            mPendingIconTint = iconTint;
+            scheduleDispatch(FLAG_ICON_TINT_CHANGED);
         }
     }
 
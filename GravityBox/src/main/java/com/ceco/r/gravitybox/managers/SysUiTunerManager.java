@@ -18,6 +18,7 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.ResultReceiver;
 import android.provider.Settings;
@@ -28,8 +29,11 @@ import com.ceco.r.gravitybox.tuner.TuneableItem;
 import com.ceco.r.gravitybox.tuner.TunerBlacklist;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +50,10 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
     public static final String ACTION_GET_TUNEABLES = "gravitybox.intent.action.TUNER_GET_TUNABLES";
     public static final String EXTRA_TUNER_CATEGORY = "tunerCategory";
     public static final String EXTRA_TUNEABLES = "tunerTuneables";
+    public static final String EXTRA_TUNEABLES_LAST_PAGE = "tunerTuneablesLastPage";
+
+    // keeps each result Bundle well below binder transaction limit
+    private static final int TUNEABLES_PAGE_SIZE = 200;
 
     public enum Category { FRAMEWORK, SYSTEMUI }
 
@@ -53,9 +61,14 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
         XposedBridge.log(TAG + ": " + msg);
     }
 
-    private static Map<Category,List<TuneableItem>> sUserItemsCache = new HashMap<>();
+    // Immutable key to user item tables built once per process in initUserItemsCache
+    private static Map<Category,Map<String,TuneableItem>> sUserItemsCache = new EnumMap<>(Category.class);
 
     private Context mContext;
+    // Tuneables catalogue built once per configuration
+    private final Map<Category,List<TuneableItem>> mCatalogue = new EnumMap<>(Category.class);
+    // bumped on configuration change so that catalogue built for old configuration is not cached
+    private int mCatalogueGeneration;
 
     SysUiTunerManager(Context context) {
         mContext = context;
@@ -63,7 +76,8 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
         updateTrialCountdown();
 
         SysUiManagers.BroadcastMediator.subscribe(this,
-                ACTION_GET_TUNEABLES);
+                ACTION_GET_TUNEABLES,
+                Intent.ACTION_CONFIGURATION_CHANGED);
 
         if (DEBUG) log("created");
     }
@@ -95,16 +109,65 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
             if (DEBUG) log("Request for tuneables received");
             ResultReceiver receiver = intent.getParcelableExtra("receiver");
             Category category = Category.valueOf(intent.getStringExtra(EXTRA_TUNER_CATEGORY));
-            sendTuneables(category, receiver);
+            AsyncTask.execute(() -> sendTuneables(category, receiver));
+        } else if (Intent.ACTION_CONFIGURATION_CHANGED.equals(intent.getAction())) {
+            synchronized (mCatalogue) {
+                mCatalogue.clear();
+                mCatalogueGeneration++;
+            }
         }
     }
 
     private void sendTuneables(Category category, ResultReceiver receiver) {
+        List<TuneableItem> catalogue;
+        final int generation;
+        synchronized (mCatalogue) {
+            catalogue = mCatalogue.get(category);
+            generation = mCatalogueGeneration;
+        }
+        if (catalogue == null) {
+            // built outside of lock so that configuration changes on main thread don't wait for it
+            catalogue = buildCatalogue(category);
+            synchronized (mCatalogue) {
+                if (generation == mCatalogueGeneration) {
+                    List<TuneableItem> cached = mCatalogue.get(category);
+                    if (cached != null) {
+                        catalogue = cached;
+                    } else {
+                        mCatalogue.put(category, catalogue);
+                    }
+                }
+            }
+        }
+
+        final int size = catalogue.size();
+        int start = 0;
+        do {
+            final int end = Math.min(start + TUNEABLES_PAGE_SIZE, size);
+            Bundle data = new Bundle();
+            data.putParcelableArrayList(EXTRA_TUNEABLES,
+                    new ArrayList<>(catalogue.subList(start, end)));
+            data.putBoolean(EXTRA_TUNEABLES_LAST_PAGE, end == size);
+            receiver.send(0, data);
+            start = end;
+        } while (start < size);
+        if (DEBUG) log("Tuneables sent to receiver: " + size);
+    }
+
+    private static int getResourceId(Field f, Resources res, String type, String pkgName) {
+        if (f.getType() == int.class && Modifier.isStatic(f.getModifiers())) {
+            try {
+                return f.getInt(null);
+            } catch (IllegalAccessException ignore) { }
+        }
+        return res.getIdentifier(f.getName(), type, pkgName);
+    }
+
+    private List<TuneableItem> buildCatalogue(Category category) {
         String pkgName = getPackageNameFor(category);
         Resources res = getResourcesFor(category);
         List<String> classNameList = getResourceClassNamesFor(category);
         ArrayList<TuneableItem> tiList = new ArrayList<>();
-        Bundle data = new Bundle();
         Class<?> clazz;
 
         for (String className : classNameList) {
@@ -117,7 +180,7 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
                         continue;
                     try {
                         TuneableItem ti = new TuneableItem(Boolean.class, category, f.getName(),
-                                res.getBoolean(res.getIdentifier(f.getName(), "bool", pkgName)));
+                                res.getBoolean(getResourceId(f, res, "bool", pkgName)));
                         tiList.add(ti);
                     } catch (Resources.NotFoundException ignore) {
                     }
@@ -133,8 +196,7 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
                         continue;
                     try {
                         TuneableItem ti = new TuneableItem(Integer.class, category, f.getName(),
-                                res.getInteger(res.getIdentifier(
-                                        f.getName(), "integer", pkgName)));
+                                res.getInteger(getResourceId(f, res, "integer", pkgName)));
                         tiList.add(ti);
                     } catch (Resources.NotFoundException ignore) {
                     }
@@ -146,9 +208,7 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
             GravityBox.log(TAG, "Didn't find any tuneables in " + category);
         }
 
-        data.putParcelableArrayList(EXTRA_TUNEABLES, tiList);
-        receiver.send(0, data);
-        if (DEBUG) log("Tuneables sent to receiver");
+        return Collections.unmodifiableList(tiList);
     }
 
     private String getPackageNameFor(Category category) {
@@ -188,9 +248,9 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
 
     // Must be called from Zygote
     public static void initUserItemsCache(final XSharedPreferences prefs) {
+        Map<String, ?> prefMap = prefs.getAll();
         for (Category category : new Category[] { Category.FRAMEWORK, Category.SYSTEMUI}) {
-            List<TuneableItem> list = new ArrayList<>();
-            Map<String, ?> prefMap = prefs.getAll();
+            Map<String,TuneableItem> items = new HashMap<>();
             for (Map.Entry<String, ?> pref : prefMap.entrySet()) {
                 if (pref.getKey().startsWith(category.toString() + ":") ||
                         pref.getKey().startsWith("tuneable:")) {
@@ -201,33 +261,28 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
                                 "; key=" + item.getKey() +
                                 "; overridden=" + item.isOverridden() +
                                 "; userValue=" + item.getUserValue());
-                        list.add(item);
+                        items.put(item.getKey(), item);
                     }
                 }
             }
-            sUserItemsCache.put(category, list);
+            sUserItemsCache.put(category, Collections.unmodifiableMap(items));
         }
     }
 
     public static void addUserItemKeysToList(Category category, List<String> list) {
-        if (sUserItemsCache.containsKey(category) && sUserItemsCache.get(category) != null) {
-            for (TuneableItem item : sUserItemsCache.get(category)) {
-                if (!list.contains(item.getKey())) {
-                    list.add(item.getKey());
+        Map<String,TuneableItem> items = sUserItemsCache.get(category);
+        if (items != null) {
+            for (String key : items.keySet()) {
+                if (!list.contains(key)) {
+                    list.add(key);
                 }
             }
         }
     }
 
     private static TuneableItem findUserItemByKey(Category category, String key) {
-        if (sUserItemsCache.containsKey(category) && sUserItemsCache.get(category) != null) {
-            for (TuneableItem item : sUserItemsCache.get(category)) {
-                if (item.getKey().equals(key)) {
-                    return item;
-                }
-            }
-        }
-        return null;
+        Map<String,TuneableItem> items = sUserItemsCache.get(category);
+        return (items == null ? null : items.get(key));
     }
 
     public static boolean onIntercept(ResourceProxy.ResourceSpec spec) {
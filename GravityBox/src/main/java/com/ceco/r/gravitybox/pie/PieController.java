@@ -26,8 +26,6 @@ import android.graphics.PorterDuff.Mode;
 import android.graphics.drawable.Drawable;
 import android.hardware.input.InputManager;
 import android.os.BatteryManager;
-import android.os.Handler;
-import android.os.Message;
 import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
@@ -35,8 +33,10 @@ import android.provider.Settings;
 import android.telephony.PhoneStateListener;
 import android.telephony.ServiceState;
 import android.telephony.TelephonyManager;
+import android.view.Choreographer;
 import android.view.HapticFeedbackConstants;
 import android.view.InputDevice;
+import android.view.InputEvent;
 import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
@@ -56,6 +56,8 @@ import com.ceco.r.gravitybox.managers.SysUiManagers;
 import com.ceco.r.gravitybox.pie.PieLayout.PieDrawable;
 import com.ceco.r.gravitybox.pie.PieLayout.PieSlice;
 
+import java.lang.reflect.Method;
+
 import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
@@ -84,8 +86,6 @@ public class PieController implements PieLayout.OnSnapListener, PieItem.PieOnCli
     public static final float EMPTY_ANGLE = 10;
     public static final float START_ANGLE = 180 + EMPTY_ANGLE;
 
-    private static final int MSG_INJECT_KEY = 1066;
-
     private Context mContext;
     private Context mGbContext;
     private Resources mGbResources;
@@ -94,6 +94,7 @@ public class PieController implements PieLayout.OnSnapListener, PieItem.PieOnCli
      * This is only needed for #toggleRecentApps()
      */
     private Object mStatusBar;
+    private Object mCommandQueue;
     private Vibrator mVibrator;
     private int mBatteryLevel;
     private int mBatteryStatus;
@@ -238,31 +239,45 @@ public class PieController implements PieLayout.OnSnapListener, PieItem.PieOnCli
         return new Tracker(position);
     }
 
-    private static class H extends Handler {
-        public void handleMessage(Message m) {
-            switch (m.what) {
-                case MSG_INJECT_KEY:
-                    final long eventTime = SystemClock.uptimeMillis();
-                    final InputManager inputManager = (InputManager)
-                            XposedHelpers.callStaticMethod(InputManager.class, "getInstance");
+    private InputManager mInputManager;
+    private Method mInjectInputEvent;
+    private int mPendingKeyCode = KeyEvent.KEYCODE_UNKNOWN;
 
-                    int flags = KeyEvent.FLAG_FROM_SYSTEM;
-                    XposedHelpers.callMethod(inputManager, "injectInputEvent",
-                            new KeyEvent(eventTime - 50, eventTime - 50, KeyEvent.ACTION_DOWN, m.arg1, 0,
-                                    0, KeyCharacterMap.VIRTUAL_KEYBOARD, 0, flags, InputDevice.SOURCE_UNKNOWN), 0);
-                    XposedHelpers.callMethod(inputManager, "injectInputEvent",
-                            new KeyEvent(eventTime - 50, eventTime - 25, KeyEvent.ACTION_UP, m.arg1, 0,
-                                    0, KeyCharacterMap.VIRTUAL_KEYBOARD, 0, flags, InputDevice.SOURCE_UNKNOWN), 0);
+    // Keys are injected on the next frame so the pie finishes handling the touch
+    // that triggered the action before the key reaches the focused window
+    private final Choreographer.FrameCallback mInjectKeyCallback = frameTimeNanos -> {
+        final int keyCode = mPendingKeyCode;
+        mPendingKeyCode = KeyEvent.KEYCODE_UNKNOWN;
+        if (keyCode != KeyEvent.KEYCODE_UNKNOWN) {
+            injectKey(keyCode);
+        }
+    };
 
-                    break;
-            }
+    private void injectKeyOnNextFrame(int keycode) {
+        if (mPendingKeyCode == KeyEvent.KEYCODE_UNKNOWN) {
+            Choreographer.getInstance().postFrameCallback(mInjectKeyCallback);
         }
+        mPendingKeyCode = keycode;
     }
-    private H mHandler = new H();
 
-    private void injectKeyDelayed(int keycode) {
-        mHandler.removeMessages(MSG_INJECT_KEY);
-        mHandler.sendMessageDelayed(Message.obtain(mHandler, MSG_INJECT_KEY, keycode, 0), 50);
+    private void injectKey(int keycode) {
+        try {
+            if (mInjectInputEvent == null) {
+                mInputManager = mContext.getSystemService(InputManager.class);
+                mInjectInputEvent = XposedHelpers.findMethodExact(InputManager.class,
+                        "injectInputEvent", InputEvent.class, int.class);
+            }
+            final long eventTime = SystemClock.uptimeMillis();
+            final int flags = KeyEvent.FLAG_FROM_SYSTEM;
+            mInjectInputEvent.invoke(mInputManager,
+                    new KeyEvent(eventTime, eventTime, KeyEvent.ACTION_DOWN, keycode, 0,
+                            0, KeyCharacterMap.VIRTUAL_KEYBOARD, 0, flags, InputDevice.SOURCE_UNKNOWN), 0);
+            mInjectInputEvent.invoke(mInputManager,
+                    new KeyEvent(eventTime, SystemClock.uptimeMillis(), KeyEvent.ACTION_UP, keycode, 0,
+                            0, KeyCharacterMap.VIRTUAL_KEYBOARD, 0, flags, InputDevice.SOURCE_UNKNOWN), 0);
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+        }
     }
 
     @Override
@@ -325,6 +340,7 @@ public class PieController implements PieLayout.OnSnapListener, PieItem.PieOnCli
 
     public void attachTo(Object statusBar) {
         mStatusBar = statusBar;
+        mCommandQueue = null;
     }
 
     public void attachTo(PieLayout container) {
@@ -570,19 +586,21 @@ public class PieController implements PieLayout.OnSnapListener, PieItem.PieOnCli
 
         switch (type) {
             case BACK:
-                injectKeyDelayed(KeyEvent.KEYCODE_BACK);
+                injectKeyOnNextFrame(KeyEvent.KEYCODE_BACK);
                 break;
             case HOME:
-                injectKeyDelayed(KeyEvent.KEYCODE_HOME);
+                injectKeyOnNextFrame(KeyEvent.KEYCODE_HOME);
                 break;
             case MENU:
-                injectKeyDelayed(KeyEvent.KEYCODE_MENU);
+                injectKeyOnNextFrame(KeyEvent.KEYCODE_MENU);
                 break;
             case RECENT:
                 if (mStatusBar != null) {
                     try {
-                        Object commandQueue = XposedHelpers.getObjectField(mStatusBar, "mCommandQueue");
-                        XposedHelpers.callMethod(commandQueue, "toggleRecentApps");
+                        if (mCommandQueue == null) {
+                            mCommandQueue = XposedHelpers.getObjectField(mStatusBar, "mCommandQueue");
+                        }
+                        XposedHelpers.callMethod(mCommandQueue, "toggleRecentApps");
                     } catch (Throwable t) {
                         GravityBox.log(TAG, t);
                     }
@@ -119,6 +119,7 @@ public class PieItem extends PieLayout.PieDrawable {
         } else {
             flags &= ~PieLayout.PieDrawable.VISIBLE;
         }
+        invalidateStaticContent();
     }
 
     public void setSelected(boolean selected) {
@@ -133,6 +134,7 @@ public class PieItem extends PieLayout.PieDrawable {
     public void setAlpha(float alpha) {
         if (mView != null) {
             mView.setAlpha(alpha);
+            invalidateStaticContent();
         }
     }
 
@@ -140,6 +142,7 @@ public class PieItem extends PieLayout.PieDrawable {
         if (mView instanceof ImageView) {
             ImageView imageView = (ImageView)mView;
             imageView.setImageDrawable(drawable);
+            invalidateStaticContent();
         }
     }
 
@@ -156,6 +159,13 @@ public class PieItem extends PieLayout.PieDrawable {
                 imageView.setImageDrawable(drawable);
             }
         }
+        invalidateStaticContent();
+    }
+
+    private void invalidateStaticContent() {
+        if (mPieLayout != null) {
+            mPieLayout.invalidateStaticContent();
+        }
     }
 
     @Override
@@ -180,10 +190,12 @@ public class PieItem extends PieLayout.PieDrawable {
 
     @Override
     public void draw(Canvas canvas, Position position) {
-        canvas.drawPath(mPath, (flags & SELECTED) != 0
-                ? mSelectedPaint : mBackgroundPaint);
-        canvas.drawPath(mPath, (flags & SELECTED) != 0
-                ? mSelectedPaint : mOutlinePaint);
+        drawItem(canvas, position, (flags & SELECTED) != 0);
+    }
+
+    /* package */ void drawItem(Canvas canvas, Position position, boolean selected) {
+        canvas.drawPath(mPath, selected ? mSelectedPaint : mBackgroundPaint);
+        canvas.drawPath(mPath, selected ? mSelectedPaint : mOutlinePaint);
 
         if (mView != null) {
             int state = canvas.save();
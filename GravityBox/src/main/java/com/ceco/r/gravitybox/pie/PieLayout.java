@@ -25,6 +25,8 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
 import android.graphics.Point;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
 import android.os.Looper;
 import android.os.SystemClock;
 import android.view.MotionEvent;
@@ -182,8 +184,32 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
 
     private List<PieSlice> mSlices = new ArrayList<>();
     private List<PieDrawable> mDrawableCache = new ArrayList<>();
+    private List<PieSlice> mSliceCache = new ArrayList<>();
+    private List<PieItem> mItemCache = new ArrayList<>();
     private PieItem mActiveItem;
 
+    /**
+     * Angular lookup table for hit testing. Each one degree bucket holds the items whose
+     * sweep overlaps it, so a move event only has to check the one or two candidates
+     * at its angle instead of asking every drawable.
+     */
+    private static final int HIT_TABLE_SIZE = 360;
+    private static final PieItem[] NO_ITEMS = new PieItem[0];
+    private final PieItem[][] mHitTable = new PieItem[HIT_TABLE_SIZE][];
+
+    /**
+     * Items are static while the pie is showing, so their outlines and icons are recorded
+     * once into a display list and replayed on every frame. Only slices (sysinfo) and the
+     * selected item are drawn live on top of it. The selected item is left out of the
+     * recording so it is not painted twice, thus selection change re-records the list.
+     */
+    private final RenderNode mStaticNode = new RenderNode("PieStatic");
+    private int mContentGeneration;
+    private int mStaticNodeGeneration = -1;
+    private Position mStaticNodePosition;
+    private float mStaticNodeScale;
+    private PieItem mStaticNodeExcludedItem;
+
     private class SnapPoint {
         private final int mX;
         private final int mY;
@@ -354,8 +380,19 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
                     canvas.translate(-mCenter.x, -mCenter.y);
             }
 
-            for (PieDrawable drawable : mDrawableCache) {
-                drawable.draw(canvas, mPosition);
+            if (canvas.isHardwareAccelerated()) {
+                updateStaticNode();
+                canvas.drawRenderNode(mStaticNode);
+                for (PieSlice slice : mSliceCache) {
+                    slice.draw(canvas, mPosition);
+                }
+                if (mActiveItem != null) {
+                    mActiveItem.draw(canvas, mPosition);
+                }
+            } else {
+                for (PieDrawable drawable : mDrawableCache) {
+                    drawable.draw(canvas, mPosition);
+                }
             }
 
             canvas.restoreToCount(state);
@@ -364,6 +401,43 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
         }
     }
 
+    private void updateStaticNode() {
+        if (mStaticNodeGeneration == mContentGeneration && mStaticNodePosition == mPosition
+                && mStaticNodeScale == mPieScale && mStaticNodeExcludedItem == mActiveItem
+                && mStaticNode.hasDisplayList()) {
+            return;
+        }
+
+        long start = SystemClock.uptimeMillis();
+        mStaticNode.setPosition(0, 0, getWidth(), getHeight());
+        mStaticNode.setClipToBounds(false);
+        RecordingCanvas canvas = mStaticNode.beginRecording();
+        try {
+            for (PieItem item : mItemCache) {
+                if (item != mActiveItem) {
+                    item.drawItem(canvas, mPosition, false);
+                }
+            }
+        } finally {
+            mStaticNode.endRecording();
+        }
+        mStaticNodeGeneration = mContentGeneration;
+        mStaticNodePosition = mPosition;
+        mStaticNodeScale = mPieScale;
+        mStaticNodeExcludedItem = mActiveItem;
+
+        if (DEBUG) log("Static content recorded within " + (SystemClock.uptimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Drops the recorded static content. Must be called whenever anything that
+     * affects the appearance of an unselected {@link PieItem} changes.
+     */
+    /* package */ void invalidateStaticContent() {
+        mContentGeneration++;
+        postInvalidate();
+    }
+
     @SuppressLint("ClickableViewAccessibility")
     @Override
     public boolean onTouch(View v, MotionEvent event) {
@@ -395,10 +469,12 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
                     }
                 }
 
-                double distance = Math.sqrt(Math.pow(mCenter.x - x, 2) + Math.pow(mCenter.y - y, 2));
+                final float dx = x - mCenter.x;
+                final float dy = y - mCenter.y;
+                double distance = Math.sqrt(dx * dx + dy * dy);
 
                 float alpha = (float) ((distance > 1.0f)
-                        ? Math.toDegrees(Math.atan2(y - mCenter.y, x - mCenter.x)) : 0.0f);
+                        ? Math.toDegrees(Math.atan2(dy, dx)) : 0.0f);
                 if (alpha < 0.0f) {
                     alpha = 360 + alpha;
                 }
@@ -412,13 +488,7 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
                     log("interact on: (" + alpha + "," + distance + ")");
                 }
 
-                PieItem newItem = null;
-                for (PieDrawable drawable : mDrawableCache) {
-                    PieItem tmp = drawable.interact(alpha, radius);
-                    if (tmp != null) {
-                        newItem = tmp;
-                    }
-                }
+                PieItem newItem = findItem(alpha, radius);
                 if (newItem != mActiveItem) {
                     removeCallbacks(mOnLongPressRunnable);
                     if (newItem != null) {
@@ -449,6 +519,53 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
         return true;
     }
 
+    private PieItem findItem(float alpha, int radius) {
+        PieItem[] candidates = mHitTable[(int) alpha % HIT_TABLE_SIZE];
+        if (candidates == null) {
+            return null;
+        }
+
+        PieItem item = null;
+        for (PieItem candidate : candidates) {
+            PieItem tmp = candidate.interact(alpha, radius);
+            if (tmp != null) {
+                item = tmp;
+            }
+        }
+        return item;
+    }
+
+    private void buildHitTable() {
+        List<List<PieItem>> buckets = new ArrayList<>(HIT_TABLE_SIZE);
+        for (int i = 0; i < HIT_TABLE_SIZE; i++) {
+            buckets.add(null);
+        }
+
+        for (PieItem item : mItemCache) {
+            int first = Math.max(0, (int) Math.floor(item.mStart));
+            int last = Math.min(HIT_TABLE_SIZE - 1, (int) Math.ceil(item.mStart + item.mSweep));
+            for (int i = first; i <= last; i++) {
+                List<PieItem> bucket = buckets.get(i);
+                if (bucket == null) {
+                    bucket = new ArrayList<>(2);
+                    buckets.set(i, bucket);
+                }
+                bucket.add(item);
+            }
+        }
+
+        for (int i = 0; i < HIT_TABLE_SIZE; i++) {
+            List<PieItem> bucket = buckets.get(i);
+            mHitTable[i] = bucket == null ? NO_ITEMS : bucket.toArray(NO_ITEMS);
+        }
+    }
+
+    private void clearHitTable() {
+        for (int i = 0; i < HIT_TABLE_SIZE; i++) {
+            mHitTable[i] = null;
+        }
+    }
+
     private Runnable mOnLongPressRunnable = new Runnable() {
         @Override
         public void run() {
@@ -483,10 +600,13 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
         // our position changed
         if (changed || mPosition != mLayoutDoneForPosition) {
             mDrawableCache.clear();
+            mSliceCache.clear();
+            mItemCache.clear();
             for (PieSlice slice : mSlices) {
                 slice.prepare(mPosition, mPieScale);
                 if ((slice.flags & viewMask) == viewMask) {
                     mDrawableCache.add(slice);
+                    mSliceCache.add(slice);
                     // This is not nice, but it will help to keep the PieSlice abstract
                     // class more clutter free.
                     if (slice instanceof PieSliceContainer) {
@@ -494,11 +614,14 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
                             if ((item.flags & viewMask) == viewMask) {
                                 item.prepare(mPosition, mPieScale);
                                 mDrawableCache.add(item);
+                                mItemCache.add(item);
                             }
                         }
                     }
                 }
             }
+            buildHitTable();
+            mContentGeneration++;
             mLayoutDoneForPosition = mPosition;
         }
 
@@ -605,12 +728,17 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
         if (!mActive) {
             mAnimationListenerCache.clear();
             mDrawableCache.clear();
+            mSliceCache.clear();
+            mItemCache.clear();
+            clearHitTable();
             mActiveItem = null;
         }
+        mContentGeneration++;
     }
 
     public void addSlice(PieSlice slice) {
         mSlices.add(slice);
+        mContentGeneration++;
     }
 
     public boolean isShowing() {
@@ -61,6 +61,7 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
 
     private boolean mStaleData = true;
     private String mClockText;
+    private char[] mClockChars;
     private String mDateText;
     private String mNetworkState;
     private String mBatteryLevelReadable;
@@ -94,6 +95,7 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
         mStaleData = true;
 
         mClockText = getTimeFormat().format(new Date());
+        mClockChars = mClockText.toCharArray();
 
         mClockPaint.setAlpha(0);
         mInfoPaint.setAlpha(0);
@@ -104,9 +106,9 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
         mClockPaint.setTextSize((mOuter - mInner) * scale);
 
         float total = 0;
-        for (int i = 0; i < mClockText.length(); i++) {
-            char character = mClockText.charAt(i);
-            float measure = mClockPaint.measureText("" + character);
+        for (int i = 0; i < mClockChars.length; i++) {
+            char character = mClockChars[i];
+            float measure = mClockPaint.measureText(mClockChars, i, 1);
             mClockTextDisplacements[i] = measure * (character == '1' || character == ':' ? 0.5f : 0.8f);
             total += mClockTextDisplacements[i];
         }
@@ -126,8 +128,8 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
         }
 
         float lastPos = 0;
-        for(int i = 0; i < mClockText.length(); i++) {
-            canvas.drawTextOnPath("" + mClockText.charAt(i), mClockPath, lastPos, 0, mClockPaint);
+        for(int i = 0; i < mClockChars.length; i++) {
+            canvas.drawTextOnPath(mClockChars, i, 1, mClockPath, lastPos, 0, mClockPaint);
             lastPos += mClockTextDisplacements[i];
         }
 
@@ -456,7 +456,8 @@ public class QsPanel implements BroadcastMediator.Receiver {
             mAm = (ActivityManager) mQsPanel.getContext().getSystemService(Context.ACTIVITY_SERVICE);
         }
         if (mMemInfoReader == null) {
-            mMemInfoReader = new MemInfoReader();
+            mMemInfoReader = new MemInfoReader(MemInfoReader.MEMINFO_TOTAL,
+                    MemInfoReader.MEMINFO_FREE, MemInfoReader.MEMINFO_CACHED);
         }
 
         // update layout
@@ -14,7 +14,10 @@
  */
 package com.ceco.r.gravitybox.quicksettings;
 
+import java.lang.reflect.Field;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.ceco.r.gravitybox.GravityBox;
 import com.ceco.r.gravitybox.GravityBoxSettings;
@@ -48,6 +51,8 @@ public class QsQuickPulldownHandler implements BroadcastMediator.Receiver {
 
     private static final String CLASS_NOTIF_PANEL = 
             "com.android.systemui.statusbar.phone.NotificationPanelView";
+    private static final String CLASS_NOTIF_ENTRY_MANAGER =
+            "com.android.systemui.statusbar.notification.NotificationEntryManager";
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -58,18 +63,44 @@ public class QsQuickPulldownHandler implements BroadcastMediator.Receiver {
     private int mMode;
     private int mModeAuto;
     private int mSizePercent;
+    private boolean mEnabled;
     private Object mNotificationManager;
 
+    // Notification tally used by auto mode. Entries are tracked by key as they enter and
+    // leave the entry manager's active set so that touch-down only reads the counts.
+    // A full recount is done only when the tally is dirty.
+    private final Map<String, Boolean> mTallyEntries = new HashMap<>();
+    private int mClearableNotifCount;
+    private boolean mTallyDirty = true;
+    private boolean mTallyTracking;
+    private Field mEntrySbnField;
+    private Field mActiveNotificationsField;
+    private Object mKeyguardEnvironment;
+
+    // Panel controller state accessors resolved on first ACTION_DOWN
+    private Field mHostField;
+    private Class<?> mHostClass;
+    private Field mBlockTouchesField;
+    private Field mOnlyAffordanceField;
+    private Field mQsExpandField;
+    private Field mQsTrackingField;
+    private Field mConflictingQsExpansionField;
+    private Field mQsExpansionEnabledField;
+    private Field mStatusBarMinHeightField;
+    private Field mQsField;
+
     public QsQuickPulldownHandler(Context context, XSharedPreferences prefs, 
             QsTileEventDistributor eventDistributor) {
         mContext = context;
         mPrefs = prefs;
 
         SysUiManagers.BroadcastMediator.subscribe(this,
-                GravityBoxSettings.ACTION_PREF_QUICKSETTINGS_CHANGED);
+                GravityBoxSettings.ACTION_PREF_QUICKSETTINGS_CHANGED,
+                Intent.ACTION_USER_SWITCHED);
 
         initPreferences();
         createHooks();
+        createTallyHooks();
         if (DEBUG) log("Quick pulldown handler created");
     }
 
@@ -79,10 +110,15 @@ public class QsQuickPulldownHandler implements BroadcastMediator.Receiver {
         mSizePercent = mPrefs.getInt(GravityBoxSettings.PREF_KEY_QUICK_PULLDOWN_SIZE, 15);
         mModeAuto = Integer.parseInt(mPrefs.getString(
                 GravityBoxSettings.PREF_KEY_QUICK_SETTINGS_AUTOSWITCH, "0"));
+        updateEnabled();
         if (DEBUG) log("initPreferences: mode=" + mMode + "; size%=" + mSizePercent +
                 "; modeAuto=" + mModeAuto);
     }
 
+    private void updateEnabled() {
+        mEnabled = (mMode != MODE_OFF || mModeAuto != MODE_AUTO_OFF);
+    }
+
     @Override
     public void onBroadcastReceived(Context context, Intent intent) {
         if (intent.getAction().equals(GravityBoxSettings.ACTION_PREF_QUICKSETTINGS_CHANGED)) {
@@ -97,7 +133,127 @@ public class QsQuickPulldownHandler implements BroadcastMediator.Receiver {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_QS_AUTOSWITCH)) {
                 mModeAuto = intent.getIntExtra(GravityBoxSettings.EXTRA_QS_AUTOSWITCH, MODE_AUTO_OFF);
                 if (DEBUG) log("onBroadcastReceived: modeAuto=" + mModeAuto);
+                mTallyDirty = true;
+            }
+            updateEnabled();
+        } else if (intent.getAction().equals(Intent.ACTION_USER_SWITCHED)) {
+            mTallyDirty = true;
+        }
+    }
+
+    private void createTallyHooks() {
+        try {
+            Class<?> classEntryManager = XposedHelpers.findClass(
+                    CLASS_NOTIF_ENTRY_MANAGER, mContext.getClassLoader());
+            mActiveNotificationsField = XposedHelpers.findField(
+                    classEntryManager, "mActiveNotifications");
+
+            // entry enters the active set once its views are inflated
+            boolean hooked = !XposedBridge.hookAllMethods(classEntryManager,
+                    "addActiveNotification", new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                    if (mEntrySbnField == null) {
+                        mEntrySbnField = XposedHelpers.findField(param.args[0].getClass(), "mSbn");
+                    }
+                    updateTallyEntry(param.thisObject,
+                            ((StatusBarNotification) mEntrySbnField.get(param.args[0])).getKey());
+                }
+            }).isEmpty();
+
+            // clearable flag may change with an update
+            hooked &= !XposedBridge.hookAllMethods(classEntryManager,
+                    "updateNotificationInternal", new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) {
+                    updateTallyEntry(param.thisObject,
+                            ((StatusBarNotification) param.args[0]).getKey());
+                }
+            }).isEmpty();
+
+            // entry stays active while its lifetime is extended; this is called again
+            // when the extension ends so checking the active set covers both cases
+            hooked &= !XposedBridge.hookAllMethods(classEntryManager,
+                    "removeNotificationInternal", new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) {
+                    updateTallyEntry(param.thisObject, (String) param.args[0]);
+                }
+            }).isEmpty();
+
+            mTallyTracking = hooked;
+            if (DEBUG) log("Notification tally tracking: " + mTallyTracking);
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+        }
+    }
+
+    private void updateTallyEntry(Object entryManager, String key) {
+        if (mTallyDirty || key == null) return;
+
+        try {
+            Object entry = ((Map<?,?>) mActiveNotificationsField.get(entryManager)).get(key);
+            StatusBarNotification sbn = null;
+            if (entry != null) {
+                if (mEntrySbnField == null) {
+                    mEntrySbnField = XposedHelpers.findField(entry.getClass(), "mSbn");
+                }
+                sbn = (StatusBarNotification) mEntrySbnField.get(entry);
+            }
+            Boolean wasClearable;
+            if (sbn != null && isForCurrentProfiles(entryManager, sbn)) {
+                wasClearable = mTallyEntries.put(key, sbn.isClearable());
+                if (sbn.isClearable()) {
+                    mClearableNotifCount++;
+                }
+            } else {
+                wasClearable = mTallyEntries.remove(key);
+            }
+            if (wasClearable != null && wasClearable) {
+                mClearableNotifCount--;
+            }
+            if (DEBUG) log("updateTallyEntry: key=" + key + "; count=" + mTallyEntries.size() +
+                    "; clearable=" + mClearableNotifCount);
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+            mTallyDirty = true;
+        }
+    }
+
+    private boolean isForCurrentProfiles(Object entryManager, StatusBarNotification sbn) {
+        if (mKeyguardEnvironment == null) {
+            mKeyguardEnvironment = XposedHelpers.getObjectField(entryManager, "mKeyguardEnvironment");
+        }
+        return (boolean) XposedHelpers.callMethod(mKeyguardEnvironment,
+                "isNotificationForCurrentProfiles", sbn);
+    }
+
+    private void updateNotificationTally() {
+        if (mNotificationManager == null) return;
+        // without tracking hooks the tally is recounted on every touch-down
+        if (!mTallyDirty && mTallyTracking) return;
+
+        try {
+            List<?> list = (List<?>) XposedHelpers.callMethod(mNotificationManager,
+                    "getActiveNotificationsForCurrentUser");
+            mTallyEntries.clear();
+            mClearableNotifCount = 0;
+            for (Object entry : list) {
+                if (mEntrySbnField == null) {
+                    mEntrySbnField = XposedHelpers.findField(entry.getClass(), "mSbn");
+                }
+                StatusBarNotification sbn = (StatusBarNotification) mEntrySbnField.get(entry);
+                mTallyEntries.put(sbn.getKey(), sbn.isClearable());
+                if (sbn.isClearable()) {
+                    mClearableNotifCount++;
+                }
             }
+            mTallyDirty = false;
+            if (DEBUG) log("updateNotificationTally: count=" + mTallyEntries.size() +
+                    "; clearable=" + mClearableNotifCount);
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+            mTallyDirty = true;
         }
     }
 
@@ -109,35 +265,39 @@ public class QsQuickPulldownHandler implements BroadcastMediator.Receiver {
         try {
             ClassLoader cl = mContext.getClassLoader();
 
-            final String qsExpandFieldName = getQsExpandFieldName();
+            final Class<?> classTouchHandler = XposedHelpers.findClass(
+                    ModStatusBar.CLASS_TOUCH_HANDLER, cl);
+            final Class<?> classNotifPanel = XposedHelpers.findClass(CLASS_NOTIF_PANEL, cl);
+            mHostField = XposedHelpers.findField(classTouchHandler, "this$0");
 
-            XposedHelpers.findAndHookMethod(ModStatusBar.CLASS_TOUCH_HANDLER, cl,
+            XposedHelpers.findAndHookMethod(classTouchHandler,
                     "onTouch", View.class, MotionEvent.class, new XC_MethodHook() {
                 @Override
-                protected void afterHookedMethod(MethodHookParam param) {
-                    if (!CLASS_NOTIF_PANEL.equals(param.args[0].getClass().getName()))
+                protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                    // only the initial touch decides about quick pulldown
+                    if (!mEnabled || ((MotionEvent) param.args[1]).getActionMasked() !=
+                            MotionEvent.ACTION_DOWN || param.args[0].getClass() != classNotifPanel)
                         return;
 
-                    final Object host = XposedHelpers.getSurroundingThis(param.thisObject);
-                    final View view = (View) param.args[0];
-                    if ((mMode == MODE_OFF && mModeAuto == MODE_AUTO_OFF) ||
-                        XposedHelpers.getBooleanField(host, "mBlockTouches") ||
-                        XposedHelpers.getBooleanField(host, "mOnlyAffordanceInThisMotion") ||
-                        XposedHelpers.getBooleanField(host, qsExpandFieldName) ||
+                    final Object host = mHostField.get(param.thisObject);
+                    resolveHostFields(host.getClass());
+                    if (mBlockTouchesField.getBoolean(host) ||
+                        mOnlyAffordanceField.getBoolean(host) ||
+                        mQsExpandField.getBoolean(host) ||
                         isQsContainerCustomizing(host) ||
-                        (!XposedHelpers.getBooleanField(host, qsExpandFieldName) &&
-                                XposedHelpers.getBooleanField(host, "mQsTracking") &&
-                                !XposedHelpers.getBooleanField(host, "mConflictingQsExpansionGesture"))) {
+                        (mQsTrackingField.getBoolean(host) &&
+                                !mConflictingQsExpansionField.getBoolean(host))) {
                         return;
                     }
 
+                    final View view = (View) param.args[0];
                     final MotionEvent event = (MotionEvent) param.args[1];
-                    boolean oneFingerQsOverride = event.getActionMasked() == MotionEvent.ACTION_DOWN
-                            && shouldQuickSettingsIntercept(host, view, event.getX(), event.getY(), -1)
-                            && event.getY(event.getActionIndex()) < 
-                                XposedHelpers.getIntField(host, "mStatusBarMinHeight");
+                    boolean oneFingerQsOverride =
+                            shouldQuickSettingsIntercept(host, view, event.getX(), event.getY(), -1)
+                            && event.getY(event.getActionIndex()) <
+                                mStatusBarMinHeightField.getInt(host);
                     if (oneFingerQsOverride) {
-                        XposedHelpers.setBooleanField(host, qsExpandFieldName, true);
+                        mQsExpandField.setBoolean(host, true);
                         XposedHelpers.callMethod(host, "requestPanelHeightUpdate");
                         XposedHelpers.callMethod(host, "setListening", true);
                     }
@@ -148,8 +308,24 @@ public class QsQuickPulldownHandler implements BroadcastMediator.Receiver {
         }
     }
 
-    private boolean shouldQuickSettingsIntercept(Object host, View view, float x, float y, float yDiff) {
-        if (!XposedHelpers.getBooleanField(host, "mQsExpansionEnabled")) {
+    private void resolveHostFields(Class<?> hostClass) {
+        if (mHostClass == hostClass) return;
+
+        mBlockTouchesField = XposedHelpers.findField(hostClass, "mBlockTouches");
+        mOnlyAffordanceField = XposedHelpers.findField(hostClass, "mOnlyAffordanceInThisMotion");
+        mQsExpandField = XposedHelpers.findField(hostClass, getQsExpandFieldName());
+        mQsTrackingField = XposedHelpers.findField(hostClass, "mQsTracking");
+        mConflictingQsExpansionField = XposedHelpers.findField(hostClass, "mConflictingQsExpansionGesture");
+        mQsExpansionEnabledField = XposedHelpers.findField(hostClass, "mQsExpansionEnabled");
+        mStatusBarMinHeightField = XposedHelpers.findField(hostClass, "mStatusBarMinHeight");
+        mQsField = XposedHelpers.findField(hostClass, "mQs");
+        mHostClass = hostClass;
+        if (DEBUG) log("Panel fields resolved for " + hostClass.getName());
+    }
+
+    private boolean shouldQuickSettingsIntercept(Object host, View view, float x, float y, float yDiff)
+            throws IllegalAccessException {
+        if (!mQsExpansionEnabledField.getBoolean(host)) {
             return false;
         }
 
@@ -181,35 +357,20 @@ public class QsQuickPulldownHandler implements BroadcastMediator.Receiver {
     }
 
     private boolean hasNotifications(Object o) {
-        try {
-            List<?> list = (List<?>)XposedHelpers.callMethod(getNotificationManager(o),
-                    "getActiveNotificationsForCurrentUser");
-            return list.size() > 0;
-        } catch (Throwable t) {
-            GravityBox.log(TAG, t);
-            return true;
-        }
+        getNotificationManager(o);
+        updateNotificationTally();
+        return (mTallyDirty || !mTallyEntries.isEmpty());
     }
 
     private boolean hasClearableNotifications(Object o) {
-        try {
-            List<?> list = (List<?>)XposedHelpers.callMethod(getNotificationManager(o),
-                    "getActiveNotificationsForCurrentUser");
-            boolean hasClearableNotifications = false;
-            for (Object entry : list) {
-                StatusBarNotification sbn = (StatusBarNotification) XposedHelpers.getObjectField(entry, "mSbn");
-                hasClearableNotifications |= sbn.isClearable();
-            }
-            return hasClearableNotifications;
-        } catch (Throwable t) {
-            GravityBox.log(TAG, t);
-            return true;
-        }
+        getNotificationManager(o);
+        updateNotificationTally();
+        return (mTallyDirty || mClearableNotifCount > 0);
     }
 
     private boolean isQsContainerCustomizing(Object panel) {
         try {
-            Object qs = XposedHelpers.getObjectField(panel, "mQs");
+            Object qs = mQsField.get(panel);
             return (boolean) XposedHelpers.callMethod(qs, "isCustomizing");
         } catch (Throwable t) {
             GravityBox.log(TAG, "Error in isQsContainerCustomizing: ", t);
@@ -26,6 +26,7 @@ import com.ceco.r.gravitybox.R;
 import com.ceco.r.gravitybox.GravityBoxSettings;
 import com.ceco.r.gravitybox.Utils;
 import com.ceco.r.gravitybox.preference.AppPickerPreference;
+import com.ceco.r.gravitybox.shortcuts.ShortcutActionRegistry;
 import com.ceco.r.gravitybox.shortcuts.ShortcutActivity;
 
 import de.robv.android.xposed.XSharedPreferences;
@@ -273,9 +274,8 @@ public class QuickAppTile extends QsTile {
             String action = intent.getStringExtra(ShortcutActivity.EXTRA_ACTION);
             if (ShortcutActivity.isActionSafe(action) || 
                     !(mKgMonitor.isShowing() && mKgMonitor.isLocked())) {
-                Intent newIntent = new Intent(action);
-                newIntent.putExtras(intent);
-                mContext.sendBroadcast(newIntent);
+                ShortcutActionRegistry.deliverBroadcastShortcut(mContext, intent,
+                        ShortcutActionRegistry.Host.SYSTEMUI);
             }
         // otherwise let super class handle it
         } else {
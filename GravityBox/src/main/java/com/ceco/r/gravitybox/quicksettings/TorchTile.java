@@ -16,14 +16,10 @@
 package com.ceco.r.gravitybox.quicksettings;
 
 import com.ceco.r.gravitybox.R;
-import com.ceco.r.gravitybox.GravityBoxResultReceiver;
+import com.ceco.r.gravitybox.TorchController;
 import com.ceco.r.gravitybox.TorchService;
-import com.ceco.r.gravitybox.managers.BroadcastMediator;
-import com.ceco.r.gravitybox.managers.SysUiManagers;
 
 import de.robv.android.xposed.XSharedPreferences;
-import android.content.Intent;
-import android.os.Handler;
 
 public class TorchTile extends QsTile {
     public static final class Service extends QsTileServiceBase {
@@ -31,14 +27,13 @@ public class TorchTile extends QsTile {
     }
 
     private int mTorchStatus = TorchService.TORCH_STATUS_OFF;
-    private boolean mIsReceiving;
-    private GravityBoxResultReceiver mReceiver;
+    private TorchController mTorchController;
+    private boolean mIsListening;
 
-    private BroadcastMediator.Receiver mBroadcastReceiver = (context, intent) -> {
-        if (intent.getAction().equals(TorchService.ACTION_TORCH_STATUS_CHANGED) &&
-                intent.hasExtra(TorchService.EXTRA_TORCH_STATUS)) {
-            mTorchStatus = intent.getIntExtra(TorchService.EXTRA_TORCH_STATUS,
-                    TorchService.TORCH_STATUS_OFF);
+    private TorchController.Listener mTorchListener = status -> {
+        if (status != mTorchStatus) {
+            mTorchStatus = status;
+            if (DEBUG) log(getKey() + ": onTorchStatusChanged: mTorchStatus=" + mTorchStatus);
             refreshState();
         }
     };
@@ -47,32 +42,7 @@ public class TorchTile extends QsTile {
             QsTileEventDistributor eventDistributor) throws Throwable {
         super(host, key, tile, prefs, eventDistributor);
 
-        mReceiver = new GravityBoxResultReceiver(new Handler());
-        mReceiver.setReceiver((resultCode, resultData) -> {
-            final int oldState = mTorchStatus;
-            mTorchStatus = resultData.getInt(TorchService.EXTRA_TORCH_STATUS);
-            if (mTorchStatus != oldState) {
-                refreshState();
-                if (DEBUG) log(getKey() + ": onReceiveResult: mTorchStatus=" + mTorchStatus);
-            }
-        });
-    }
-
-    private void registerReceiver() {
-        if (!mIsReceiving) {
-            SysUiManagers.BroadcastMediator.subscribe(mBroadcastReceiver,
-                    TorchService.ACTION_TORCH_STATUS_CHANGED);
-            mIsReceiving = true;
-            if (DEBUG) log(getKey() + ": receiver registered");
-        }
-    }
-
-    private void unregisterReceiver() {
-        if (mIsReceiving) {
-            SysUiManagers.BroadcastMediator.unsubscribe(mBroadcastReceiver);
-            mIsReceiving = false;
-            if (DEBUG) log(getKey() + ": unreceiver registered");
-        }
+        mTorchController = TorchController.getInstance(mContext);
     }
 
     @Override
@@ -82,28 +52,18 @@ public class TorchTile extends QsTile {
 
     @Override
     public void setListening(boolean listening) {
-        if (listening) {
-            registerReceiver();
-            getTorchState();
-        } else {
-            unregisterReceiver();
+        if (listening && !mIsListening) {
+            mTorchController.addListener(mTorchListener);
+            mIsListening = true;
+            mTorchListener.onTorchStatusChanged(mTorchController.getTorchStatus());
+            if (DEBUG) log(getKey() + ": torch listener added");
+        } else if (!listening && mIsListening) {
+            mTorchController.removeListener(mTorchListener);
+            mIsListening = false;
+            if (DEBUG) log(getKey() + ": torch listener removed");
         }
     }
 
-    private void getTorchState() {
-        Intent si = new Intent(mGbContext, TorchService.class);
-        si.setAction(TorchService.ACTION_TORCH_GET_STATUS);
-        si.putExtra("receiver", mReceiver);
-        mGbContext.startService(si);
-        if (DEBUG) log(getKey() + ": ACTION_TORCH_GET_STATUS sent");
-    }
-
-    private void toggleState() {
-        Intent si = new Intent(mGbContext, TorchService.class);
-        si.setAction(TorchService.ACTION_TOGGLE_TORCH);
-        mGbContext.startService(si);
-    }
-
     @Override
     public void handleUpdateState(Object state, Object arg) {
         mState.booleanValue = mTorchStatus == TorchService.TORCH_STATUS_ON;
@@ -120,14 +80,13 @@ public class TorchTile extends QsTile {
 
     @Override
     public void handleClick() {
-        toggleState();
+        mTorchController.toggleTorch();
         super.handleClick();
     }
 
     @Override
     public void handleDestroy() {
         super.handleDestroy();
-        mReceiver = null;
-        mBroadcastReceiver = null;
+        mTorchListener = null;
     }
 }
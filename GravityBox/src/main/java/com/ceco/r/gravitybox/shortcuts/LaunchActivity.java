@@ -46,68 +46,6 @@ public class LaunchActivity extends Activity {
     }
 
     private void launchAction(Intent intent) {
-        final String action = intent.getStringExtra(ShortcutActivity.EXTRA_ACTION);
-
-        if (action.equals(ShowPowerMenuShortcut.ACTION)) {
-            ShowPowerMenuShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ExpandNotificationsShortcut.ACTION)) {
-            ExpandNotificationsShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ExpandQuicksettingsShortcut.ACTION)) {
-            ExpandQuicksettingsShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ExpandedDesktopShortcut.ACTION)) {
-            ExpandedDesktopShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ScreenshotShortcut.ACTION)) {
-            ScreenshotShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ScreenrecordShortcut.ACTION)) {
-            ScreenrecordShortcut.launchAction(mContext, intent);
-        } else if (action.equals(TorchShortcut.ACTION)) {
-            TorchShortcut.launchAction(mContext, intent);
-        } else if (action.equals(NetworkModeShortcut.ACTION)) {
-            NetworkModeShortcut.launchAction(mContext, intent);
-        } else if (action.equals(RecentAppsShortcut.ACTION)) {
-            RecentAppsShortcut.launchAction(mContext, intent);
-        } else if (action.equals(AppLauncherShortcut.ACTION)) {
-            AppLauncherShortcut.launchAction(mContext, intent);
-        } else if (action.equals(RotationLockShortcut.ACTION)) {
-            RotationLockShortcut.launchAction(mContext, intent);
-        } else if (action.equals(SleepShortcut.ACTION)) {
-            SleepShortcut.launchAction(mContext, intent);
-        } else if (action.equals(MobileDataShortcut.ACTION)) {
-            MobileDataShortcut.launchAction(mContext, intent);
-        } else if (action.equals(WifiShortcut.ACTION)) {
-            WifiShortcut.launchAction(mContext, intent);
-        } else if (action.equals(BluetoothShortcut.ACTION)) {
-            BluetoothShortcut.launchAction(mContext, intent);
-        } else if (action.equals(WifiApShortcut.ACTION)) {
-            WifiApShortcut.launchAction(mContext, intent);
-        } else if (action.equals(LocationModeShortcut.ACTION)) {
-            LocationModeShortcut.launchAction(mContext, intent);
-        } else if (action.equals(NfcShortcut.ACTION)) {
-            NfcShortcut.launchAction(mContext, intent);
-        } else if (action.equals(GoogleNowShortcut.ACTION)) {
-            GoogleNowShortcut.launchAction(mContext, intent);
-        } else if (action.equals(VolumePanelShortcut.ACTION)) {
-            VolumePanelShortcut.launchAction(mContext, intent);
-        } else if (action.equals(SmartRadioShortcut.ACTION)) {
-            SmartRadioShortcut.launchAction(mContext, intent);
-        } else if (action.equals(QuietHoursShortcut.ACTION)) {
-            QuietHoursShortcut.launchAction(mContext, intent);
-        } else if (action.equals(AirplaneModeShortcut.ACTION)) {
-            AirplaneModeShortcut.launchAction(mContext, intent);
-        } else if (action.equals(RingerModeShortcut.ACTION)) {
-            RingerModeShortcut.launchAction(mContext, intent);
-        } else if (action.equals(SyncShortcut.ACTION)) {
-            SyncShortcut.launchAction(mContext, intent);
-        } else if (action.equals(ClearNotificationsShortcut.ACTION)) {
-            ClearNotificationsShortcut.launchAction(mContext, intent);
-        } else if (action.equals(AutoBrightnessShortcut.ACTION)) {
-            AutoBrightnessShortcut.launchAction(mContext, intent);
-        } else if (action.equals(GoHomeShortcut.ACTION)) {
-            GoHomeShortcut.launchAction(mContext, intent);
-        } else if (action.equals(SimSettingsShortcut.ACTION)) {
-            SimSettingsShortcut.launchAction(mContext, intent);
-        } else if (action.equals(SplitScreenShortcut.ACTION)) {
-            SplitScreenShortcut.launchAction(mContext, intent);
-        }
+        ShortcutActionRegistry.launchAction(mContext, intent);
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.r.gravitybox.shortcuts;
+
+import android.content.Context;
+import android.content.Intent;
+
+import com.ceco.r.gravitybox.managers.BroadcastMediator;
+import com.ceco.r.gravitybox.managers.FrameworkManagers;
+import com.ceco.r.gravitybox.managers.SysUiManagers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.robv.android.xposed.XposedBridge;
+
+/**
+ * Maps GravityBox shortcut actions to their launchers and to the process
+ * hosting the receiver of the action broadcast
+ */
+public final class ShortcutActionRegistry {
+    public static final String TAG = "GB:ShortcutActionRegistry";
+    private static final boolean DEBUG = false;
+
+    private static void log(String msg) {
+        XposedBridge.log(TAG + ": " + msg);
+    }
+
+    /**
+     * Process hosting the receiver of shortcut action broadcast
+     */
+    public enum Host { SYSTEMUI, SYSTEM, OTHER }
+
+    private interface ActionLauncher {
+        void launchAction(Context context, Intent intent);
+    }
+
+    private static class Entry {
+        final ActionLauncher launcher;
+        final Host host;
+        Entry(ActionLauncher launcher, Host host) {
+            this.launcher = launcher;
+            this.host = host;
+        }
+    }
+
+    private static final Map<String, Entry> sEntries = new HashMap<>();
+
+    private static void register(String action, ActionLauncher launcher, Host host) {
+        sEntries.put(action, new Entry(launcher, host));
+    }
+
+    static {
+        register(ShowPowerMenuShortcut.ACTION, ShowPowerMenuShortcut::launchAction, Host.SYSTEM);
+        register(ExpandNotificationsShortcut.ACTION, ExpandNotificationsShortcut::launchAction, Host.SYSTEMUI);
+        register(ExpandQuicksettingsShortcut.ACTION, ExpandQuicksettingsShortcut::launchAction, Host.SYSTEMUI);
+        register(ExpandedDesktopShortcut.ACTION, ExpandedDesktopShortcut::launchAction, Host.SYSTEM);
+        register(ScreenshotShortcut.ACTION, ScreenshotShortcut::launchAction, Host.SYSTEM);
+        register(ScreenrecordShortcut.ACTION, ScreenrecordShortcut::launchAction, Host.SYSTEM);
+        register(TorchShortcut.ACTION, TorchShortcut::launchAction, Host.SYSTEM);
+        register(NetworkModeShortcut.ACTION, NetworkModeShortcut::launchAction, Host.OTHER);
+        register(RecentAppsShortcut.ACTION, RecentAppsShortcut::launchAction, Host.SYSTEM);
+        register(AppLauncherShortcut.ACTION, AppLauncherShortcut::launchAction, Host.SYSTEMUI);
+        register(RotationLockShortcut.ACTION, RotationLockShortcut::launchAction, Host.SYSTEM);
+        register(SleepShortcut.ACTION, SleepShortcut::launchAction, Host.SYSTEM);
+        register(MobileDataShortcut.ACTION, MobileDataShortcut::launchAction, Host.SYSTEM);
+        register(WifiShortcut.ACTION, WifiShortcut::launchAction, Host.SYSTEM);
+        register(BluetoothShortcut.ACTION, BluetoothShortcut::launchAction, Host.SYSTEM);
+        register(WifiApShortcut.ACTION, WifiApShortcut::launchAction, Host.SYSTEM);
+        register(LocationModeShortcut.ACTION, LocationModeShortcut::launchAction, Host.SYSTEM);
+        register(NfcShortcut.ACTION, NfcShortcut::launchAction, Host.SYSTEM);
+        register(GoogleNowShortcut.ACTION, GoogleNowShortcut::launchAction, Host.SYSTEMUI);
+        register(VolumePanelShortcut.ACTION, VolumePanelShortcut::launchAction, Host.SYSTEM);
+        register(SmartRadioShortcut.ACTION, SmartRadioShortcut::launchAction, Host.SYSTEMUI);
+        register(QuietHoursShortcut.ACTION, QuietHoursShortcut::launchAction, Host.SYSTEM);
+        register(AirplaneModeShortcut.ACTION, AirplaneModeShortcut::launchAction, Host.SYSTEM);
+        register(RingerModeShortcut.ACTION, RingerModeShortcut::launchAction, Host.SYSTEM);
+        register(SyncShortcut.ACTION, SyncShortcut::launchAction, Host.SYSTEM);
+        register(ClearNotificationsShortcut.ACTION, ClearNotificationsShortcut::launchAction, Host.SYSTEM);
+        register(AutoBrightnessShortcut.ACTION, AutoBrightnessShortcut::launchAction, Host.SYSTEM);
+        register(GoHomeShortcut.ACTION, GoHomeShortcut::launchAction, Host.SYSTEM);
+        register(SimSettingsShortcut.ACTION, SimSettingsShortcut::launchAction, Host.SYSTEMUI);
+        register(SplitScreenShortcut.ACTION, SplitScreenShortcut::launchAction, Host.SYSTEM);
+    }
+
+    private ShortcutActionRegistry() { }
+
+    /**
+     * Launches action of shortcut intent using launcher registered for the action
+     * @return true if launcher for the action was found
+     */
+    public static boolean launchAction(Context context, Intent intent) {
+        final String action = intent.getStringExtra(ShortcutActivity.EXTRA_ACTION);
+        final Entry entry = action == null ? null : sEntries.get(action);
+        if (entry == null) {
+            if (DEBUG) log("launchAction: no launcher for action " + action);
+            return false;
+        }
+        entry.launcher.launchAction(context, intent);
+        return true;
+    }
+
+    /**
+     * Delivers GravityBox broadcast shortcut action. When receiver of the action lives
+     * in the calling process, the action is dispatched directly via process local
+     * BroadcastMediator, otherwise it falls back to a regular broadcast.
+     * @param context - context of calling process
+     * @param shortcutIntent - GravityBox broadcast shortcut intent
+     * @param caller - process the call is made from
+     */
+    public static void deliverBroadcastShortcut(Context context, Intent shortcutIntent, Host caller) {
+        Intent actionIntent = new Intent(shortcutIntent.getStringExtra(ShortcutActivity.EXTRA_ACTION));
+        actionIntent.putExtras(shortcutIntent);
+
+        final Entry entry = sEntries.get(actionIntent.getAction());
+        if (entry != null && entry.host == caller) {
+            BroadcastMediator mediator = null;
+            if (caller == Host.SYSTEMUI) {
+                mediator = SysUiManagers.BroadcastMediator;
+            } else if (caller == Host.SYSTEM) {
+                mediator = FrameworkManagers.BroadcastMediator;
+            }
+            if (mediator != null && mediator.dispatchLocal(context, actionIntent)) {
+                if (DEBUG) log("deliverBroadcastShortcut: dispatched locally: " + actionIntent.getAction());
+                return;
+            }
+        }
+
+        context.sendBroadcast(actionIntent);
+    }
+}
@@ -47,6 +47,10 @@ public class CallFeatures {
     private static final String CLASS_CALLS_MANAGER = "com.android.server.telecom.CallsManager";
     private static final String CLASS_CALL = "com.android.server.telecom.Call";
 
+    private static final int FLIP_SAMPLING_PERIOD_US = 200000;
+    private static final int FLIP_SAMPLING_PERIOD_FALLBACK_US = 250000;
+    private static final int FLIP_MAX_REPORT_LATENCY_US = 400000;
+
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
     }
@@ -226,6 +230,8 @@ public class CallFeatures {
         @Override
         public void onFaceDown() {
             if (DEBUG) log("PhoneSensorEventListener.onFaceDown");
+            // detection is final for this call; stop sampling for the rest of ringing
+            detachSensorListener();
 
             try {
                 switch (mFlipAction) {
@@ -252,13 +258,18 @@ public class CallFeatures {
                 mSensorListenerAttached ||
                 mFlipAction == GravityBoxSettings.PHONE_FLIP_ACTION_NONE) return;
 
+        final Sensor sensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        if (sensor == null) return;
+
         mPhoneSensorEventListener.reset();
-        mSensorManager.registerListener(mPhoneSensorEventListener, 
-                mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER), 
-                SensorManager.SENSOR_DELAY_NORMAL);
+        // let sensor hub batch samples when it has a FIFO so AP isn't woken up for each of them
+        final boolean batching = sensor.getFifoMaxEventCount() > 0;
+        mSensorManager.registerListener(mPhoneSensorEventListener, sensor,
+                batching ? FLIP_SAMPLING_PERIOD_US : FLIP_SAMPLING_PERIOD_FALLBACK_US,
+                batching ? FLIP_MAX_REPORT_LATENCY_US : 0);
         mSensorListenerAttached = true;
 
-        if (DEBUG) log("Sensor listener attached");
+        if (DEBUG) log("Sensor listener attached; batching=" + batching);
     }
 
     private void detachSensorListener() {
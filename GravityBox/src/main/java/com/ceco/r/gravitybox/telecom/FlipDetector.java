@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.r.gravitybox.telecom;
+
+/**
+ * Face up -> face down detection from gravity Z-axis samples.
+ * Plain Java without Android dependencies so it can be fed with recorded traces.
+ */
+public class FlipDetector {
+    // Our accelerometers are not quite accurate.
+    static final float FACE_UP_GRAVITY_THRESHOLD = 7;
+    static final float FACE_DOWN_GRAVITY_THRESHOLD = -7;
+    static final int SENSOR_SAMPLES = 3;
+    static final int MIN_ACCEPT_COUNT = SENSOR_SAMPLES - 1;
+
+    public enum State { WAITING_FACE_UP, FACE_UP, FACE_DOWN }
+
+    public enum Event { NONE, FACE_UP, FACE_DOWN }
+
+    private State mState = State.WAITING_FACE_UP;
+    // bit per sample of the ring buffer; set when sample matches the awaited orientation
+    private int mSamples;
+    private int mSampleIndex;
+
+    public void reset() {
+        mState = State.WAITING_FACE_UP;
+        mSamples = 0;
+        mSampleIndex = 0;
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * Feeds one Z-axis gravity sample (m/s^2)
+     * @return event produced by this sample, if any
+     */
+    public Event onSample(float z) {
+        Event event = Event.NONE;
+
+        switch (mState) {
+            case WAITING_FACE_UP:
+                addSample(z > FACE_UP_GRAVITY_THRESHOLD);
+                if (isAccepted()) {
+                    mState = State.FACE_UP;
+                    mSamples = 0;
+                    event = Event.FACE_UP;
+                }
+                break;
+            case FACE_UP:
+                addSample(z < FACE_DOWN_GRAVITY_THRESHOLD);
+                if (isAccepted()) {
+                    mState = State.FACE_DOWN;
+                    event = Event.FACE_DOWN;
+                }
+                break;
+            case FACE_DOWN:
+                // final state until reset
+                return Event.NONE;
+        }
+
+        mSampleIndex = (mSampleIndex + 1) % SENSOR_SAMPLES;
+        return event;
+    }
+
+    private void addSample(boolean match) {
+        if (match) {
+            mSamples |= (1 << mSampleIndex);
+        } else {
+            mSamples &= ~(1 << mSampleIndex);
+        }
+    }
+
+    private boolean isAccepted() {
+        return Integer.bitCount(mSamples) >= MIN_ACCEPT_COUNT;
+    }
+}
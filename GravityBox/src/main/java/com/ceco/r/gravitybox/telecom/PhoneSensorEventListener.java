@@ -21,16 +21,7 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 
 public class PhoneSensorEventListener implements SensorEventListener {
-    // Our accelerometers are not quite accurate.
-    private static final int FACE_UP_GRAVITY_THRESHOLD = 7;
-    private static final int FACE_DOWN_GRAVITY_THRESHOLD = -7;
-    private static final int SENSOR_SAMPLES = 3;
-    private static final int MIN_ACCEPT_COUNT = SENSOR_SAMPLES - 1;
-
-    private boolean mStopped;
-    private boolean mWasFaceUp;
-    private boolean[] mSamples = new boolean[SENSOR_SAMPLES];
-    private int mSampleIndex;
+    private final FlipDetector mFlipDetector = new FlipDetector();
     private ActionHandler mActionHandler;
 
     public interface ActionHandler {
@@ -47,57 +38,20 @@ public class PhoneSensorEventListener implements SensorEventListener {
     }
 
     public void reset() {
-        mWasFaceUp = false;
-        mStopped = false;
-        for (int i = 0; i < SENSOR_SAMPLES; i++) {
-            mSamples[i] = false;
-        }
-    }
-
-    private boolean filterSamples() {
-        int trues = 0;
-        for (boolean sample : mSamples) {
-            if(sample) {
-                ++trues;
-            }
-        }
-        return trues >= MIN_ACCEPT_COUNT;
+        mFlipDetector.reset();
     }
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-        // Add a sample overwriting the oldest one. Several samples
-        // are used to avoid the erroneous values the sensor sometimes
-        // returns.
-        float z = event.values[2];
-
-        if (mStopped) {
-            return;
-        }
-
-        if (!mWasFaceUp) {
-            // Check if its face up enough.
-            mSamples[mSampleIndex] = z > FACE_UP_GRAVITY_THRESHOLD;
-
-            // face up
-            if (filterSamples()) {
-                mWasFaceUp = true;
-                for (int i = 0; i < SENSOR_SAMPLES; i++) {
-                    mSamples[i] = false;
-                }
+        // Several samples are used to avoid the erroneous values
+        // the sensor sometimes returns.
+        switch (mFlipDetector.onSample(event.values[2])) {
+            case FACE_UP:
                 if (mActionHandler != null) mActionHandler.onFaceUp();
-            }
-        } else {
-            // Check if its face down enough.
-            mSamples[mSampleIndex] = z < FACE_DOWN_GRAVITY_THRESHOLD;
-
-            // face down
-            if (filterSamples()) {
-                mStopped = true;
+                break;
+            case FACE_DOWN:
                 if (mActionHandler != null) mActionHandler.onFaceDown();
-            }
+                break;
         }
-
-        mSampleIndex = ((mSampleIndex + 1) % SENSOR_SAMPLES);
     }
-}
\ No newline at end of file
+}
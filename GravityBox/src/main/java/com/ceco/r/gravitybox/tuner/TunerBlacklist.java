@@ -3,11 +3,12 @@ package com.ceco.r.gravitybox.tuner;
 import com.ceco.r.gravitybox.managers.SysUiTunerManager;
 
 import java.util.Arrays;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 public class TunerBlacklist {
 
-    private static final List<String> sFramework = Arrays.asList(
+    private static final Set<String> sFramework = new HashSet<>(Arrays.asList(
             "action_bar_embed_tabs",
             "action_bar_expanded_action_views_exclusive",
             "config_allowEscrowTokenForTrustAgent",
@@ -36,9 +37,9 @@ public class TunerBlacklist {
             "use_lock_pattern_drawable",
             "autofill_max_visible_datasets",
             "config_tether_upstream_automatic"
-    );
+    ));
 
-    private static final List<String> sSystemUi = Arrays.asList(
+    private static final Set<String> sSystemUi = new HashSet<>(Arrays.asList(
             "abc_action_bar_embed_tabs",
             "abc_allow_stacked_button_bar",
             "abc_config_actionMenuItemAllCaps",
@@ -118,7 +119,7 @@ public class TunerBlacklist {
             "qs_footer_actions_width",
             "fingerprint_dialog_text_gravity",
             "watch_heap_limit"
-    );
+    ));
 
     public static boolean isBlacklisted(SysUiTunerManager.Category category, String key) {
         switch (category) {
@@ -54,6 +54,7 @@ public class TunerCategoryActivity extends GravityBoxListActivity implements
     private String mSearchQuery;
     private SearchView mSearchView;
     private List<TuneableItem> mItems;
+    private List<TuneableItem> mPendingItems;
     private Handler mHandler;
 
     @Override
@@ -166,9 +167,19 @@ public class TunerCategoryActivity extends GravityBoxListActivity implements
         mHandler.removeCallbacks(mNoResponseRunnable);
         if (!isDestroyed() && resultData != null) {
             resultData.setClassLoader(getClassLoader());
-            mItems = resultData.getParcelableArrayList(SysUiTunerManager.EXTRA_TUNEABLES);
-            mItems.sort(Comparator.comparing(TuneableItem::getKey));
-            setData();
+            List<TuneableItem> page = resultData.getParcelableArrayList(SysUiTunerManager.EXTRA_TUNEABLES);
+            if (mPendingItems == null) {
+                mPendingItems = new ArrayList<>();
+            }
+            if (page != null) {
+                mPendingItems.addAll(page);
+            }
+            if (resultData.getBoolean(SysUiTunerManager.EXTRA_TUNEABLES_LAST_PAGE, true)) {
+                mItems = mPendingItems;
+                mPendingItems = null;
+                mItems.sort(Comparator.comparing(TuneableItem::getKey));
+                setData();
+            }
         }
     }
 
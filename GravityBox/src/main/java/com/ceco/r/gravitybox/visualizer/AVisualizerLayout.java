@@ -147,4 +147,9 @@ abstract class AVisualizerLayout extends FrameLayout implements VisualizerContro
 
     @Override
     public void setLight(boolean light) { }
+
+    @Override
+    public int getCaptureRate(int maxCaptureRate) {
+        return maxCaptureRate;
+    }
 }
@@ -33,6 +33,7 @@ public class NavbarVisualizerLayout extends AVisualizerLayout {
 
     private static final String TAG = "GB:NavbarVisualizerLayout";
     private static final boolean DEBUG = false;
+    private static final int BAR_COUNT = 16;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -79,7 +80,7 @@ public class NavbarVisualizerLayout extends AVisualizerLayout {
         LayoutInflater inflater = LayoutInflater.from(Utils.getGbContext(getContext(),
                 getContext().getResources().getConfiguration()));
         inflater.inflate(R.layout.navbarvisualizer, this);
-        mVisualizerView = new VisualizerView(getContext());
+        mVisualizerView = new VisualizerView(getContext(), BAR_COUNT);
         mVisualizerView.setDbCapValue(4f);
         mVisualizerView.setSupportsVerticalPosition(true);
         int idx = indexOfChild(findViewById(R.id.visualizer));
@@ -97,6 +98,12 @@ public class NavbarVisualizerLayout extends AVisualizerLayout {
         return super.isEnabled() && mEnabled;
     }
 
+    @Override
+    public int getCaptureRate(int maxCaptureRate) {
+        // thin navbar bars don't need full rate to look smooth
+        return maxCaptureRate / 2;
+    }
+
     @Override
     public void onColorUpdated(int color) {
         color = Color.rgb(Color.red(color), Color.green(color), Color.blue(color));
@@ -77,6 +77,7 @@ public class VisualizerController implements StatusBarStateChangedListener,
         void setLight(boolean light);
         boolean isEnabled();
         boolean isAttached();
+        int getCaptureRate(int maxCaptureRate);
     }
 
     private final XSharedPreferences mPrefs;
@@ -90,6 +91,7 @@ public class VisualizerController implements StatusBarStateChangedListener,
     private int mOpacity;
     private Visualizer mVisualizer;
     private Handler mHandler;
+    private volatile int mCaptureRate;
 
     private final Runnable mLinkVisualizer = new Runnable() {
         @Override
@@ -109,14 +111,17 @@ public class VisualizerController implements StatusBarStateChangedListener,
                 return;
             }
 
+            // capture size is left at Visualizer default which bar mapping
+            // and magnitude scaling of VisualizerView are tuned for
+            final int captureRate = mCaptureRate > 0 ?
+                    mCaptureRate : Visualizer.getMaxCaptureRate();
             mVisualizer.setEnabled(false);
-            mVisualizer.setCaptureSize(66);
-            mVisualizer.setDataCaptureListener(VisualizerController.this, Visualizer.getMaxCaptureRate(),
+            mVisualizer.setDataCaptureListener(VisualizerController.this, captureRate,
                     false, true);
             mVisualizer.setEnabled(true);
 
             if (DEBUG) {
-                log("--- mLinkVisualizer run()");
+                log("--- mLinkVisualizer run(): captureRate=" + captureRate);
             }
         }
     };
@@ -320,6 +325,7 @@ public class VisualizerController implements StatusBarStateChangedListener,
             atLeastOneListenerEnabled |= l.isEnabled();
         }
         boolean newActive = mPlaying && mIsScreenOn && !isPowerSaving() && atLeastOneListenerEnabled;
+        boolean captureConfigChanged = updateCaptureConfig();
         if (newActive != mActive) {
             mActive = newActive;
             removeRunnable(mAsyncUnlinkVisualizer);
@@ -329,6 +335,8 @@ public class VisualizerController implements StatusBarStateChangedListener,
                 postRunnable(mAsyncUnlinkVisualizer, 800);
             }
             forceNotifyListeners = true;
+        } else if (mActive && captureConfigChanged) {
+            AsyncTask.execute(mLinkVisualizer);
         }
         if (forceNotifyListeners) {
             for (Listener l : mListeners) {
@@ -337,6 +345,34 @@ public class VisualizerController implements StatusBarStateChangedListener,
         }
     }
 
+    /**
+     * Negotiates FFT capture rate from listeners that are currently
+     * enabled so we never capture more often than what is actually on screen.
+     * @return true if capture configuration changed
+     */
+    private boolean updateCaptureConfig() {
+        final int maxRate = Visualizer.getMaxCaptureRate();
+        int rate = 0;
+        boolean hasActiveListener = false;
+        for (Listener l : mListeners) {
+            if (l.isEnabled()) {
+                hasActiveListener = true;
+                rate = Math.max(rate, l.getCaptureRate(maxRate));
+            }
+        }
+        if (!hasActiveListener) {
+            return false;
+        }
+
+        rate = Math.max(1, Math.min(rate, maxRate));
+        if (rate != mCaptureRate) {
+            mCaptureRate = rate;
+            if (DEBUG) log("updateCaptureConfig: captureRate=" + rate);
+            return true;
+        }
+        return false;
+    }
+
     private boolean isPowerSaving() {
         if (SysUiManagers.BatteryInfoManager != null) {
             BatteryData bd = SysUiManagers.BatteryInfoManager.getCurrentBatteryData();
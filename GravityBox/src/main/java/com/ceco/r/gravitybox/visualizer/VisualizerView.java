@@ -17,31 +17,59 @@
 
 package com.ceco.r.gravitybox.visualizer;
 
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.view.Choreographer;
 import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
 
-public class VisualizerView extends View {
+public class VisualizerView extends View implements Choreographer.FrameCallback {
 
+    private static final int DEFAULT_BAR_COUNT = 32;
+    private static final long ANIM_DURATION_NANOS = 128 * 1000000L;
+    private static final Interpolator INTERPOLATOR = new AccelerateDecelerateInterpolator();
+
+    // magnitude (re^2 + im^2 of signed bytes) never exceeds 2 * 128^2
+    private static final int MAX_MAGNITUDE = 2 * 128 * 128;
+    private static final byte[] DB_TABLE = new byte[MAX_MAGNITUDE + 1];
+    static {
+        for (int i = 1; i <= MAX_MAGNITUDE; i++) {
+            DB_TABLE[i] = (byte) (10 * Math.log10(i));
+        }
+    }
+
+    private final int mBarCount;
     private Paint mPaint;
-    private ValueAnimator[] mValueAnimators;
     private float[] mFFTPoints;
+    private float[] mStartValues;
+    private float[] mTargetValues;
     private float mDbCapValue = 16f;
 
+    private final Choreographer mChoreographer;
+    private boolean mFrameScheduled;
+    private long mAnimStartNanos;
+
     private boolean mSupportsVerticalPosition = false;
     private boolean mIsVertical = false;
     private boolean mIsVerticalLeft = false;
 
     VisualizerView(Context context) {
+        this(context, DEFAULT_BAR_COUNT);
+    }
+
+    VisualizerView(Context context, int barCount) {
         super(context, null, 0);
 
+        mBarCount = barCount;
         mPaint = new Paint();
         mPaint.setAntiAlias(true);
 
-        mFFTPoints = new float[128];
-        loadValueAnimators();
+        mFFTPoints = new float[mBarCount * 4];
+        mStartValues = new float[mBarCount];
+        mTargetValues = new float[mBarCount];
+        mChoreographer = Choreographer.getInstance();
     }
 
     void setDbCapValue(float dbCap) {
@@ -63,55 +91,80 @@ public class VisualizerView extends View {
         }
     }
 
-    private void loadValueAnimators() {
-        if (mValueAnimators != null) {
-            for (int i = 0; i < 32; i++) {
-                mValueAnimators[i].cancel();
-            }
-        }
-
-        mValueAnimators = new ValueAnimator[32];
-        for (int i = 0; i < 32; i++) {
-            final int j;
-            if (mIsVertical) {
-                j = i * 4;
-            } else {
-                j = i * 4 + 1;
-            }
-            mValueAnimators[i] = new ValueAnimator();
-            mValueAnimators[i].setDuration(128);
-            mValueAnimators[i].addUpdateListener(animation -> {
-                mFFTPoints[j] = (float) animation.getAnimatedValue();
-                postInvalidate();
-            });
-        }
+    private int valueIndex(int bar) {
+        return mIsVertical ? bar * 4 : bar * 4 + 1;
     }
 
+    /**
+     * Stores the latest FFT frame as new animation targets. All bars are then
+     * interpolated together in {@link #doFrame(long)}, once per vsync.
+     * Bars always span the first {@link #DEFAULT_BAR_COUNT} bins; with fewer bars
+     * each one shows the peak of its adjacent bins.
+     */
     void setData(byte[] fft) {
         byte rfk, ifk;
-        int dbValue;
-        float magnitude;
-        for (int i = 0; i < 32; i++) {
-            mValueAnimators[i].cancel();
-            rfk = fft[i * 2 + 2];
-            ifk = fft[i * 2 + 3];
-            magnitude = rfk * rfk + ifk * ifk;
-            dbValue = magnitude > 0 ? (int) (10 * Math.log10(magnitude)) : 0;
+        int magnitude, dbValue;
+        final int binsPerBar = Math.max(1, DEFAULT_BAR_COUNT / mBarCount);
+        final int barCount = Math.min(mBarCount, (fft.length - 2) / (2 * binsPerBar));
+        for (int i = 0; i < barCount; i++) {
+            magnitude = 0;
+            for (int bin = i * binsPerBar; bin < (i + 1) * binsPerBar; bin++) {
+                rfk = fft[bin * 2 + 2];
+                ifk = fft[bin * 2 + 3];
+                magnitude = Math.max(magnitude, rfk * rfk + ifk * ifk);
+            }
+            dbValue = DB_TABLE[magnitude];
 
+            mStartValues[i] = mFFTPoints[valueIndex(i)];
             if (mIsVertical) {
                 if (mIsVerticalLeft) {
-                    mValueAnimators[i].setFloatValues(mFFTPoints[i * 4],
-                            dbValue * mDbCapValue);
+                    mTargetValues[i] = dbValue * mDbCapValue;
                 } else {
-                    mValueAnimators[i].setFloatValues(mFFTPoints[i * 4],
-                            mFFTPoints[2] - (dbValue * mDbCapValue));
+                    mTargetValues[i] = mFFTPoints[2] - (dbValue * mDbCapValue);
                 }
             } else {
-                mValueAnimators[i].setFloatValues(mFFTPoints[i * 4 + 1],
-                        mFFTPoints[3] - (dbValue * mDbCapValue));
+                mTargetValues[i] = mFFTPoints[3] - (dbValue * mDbCapValue);
             }
-            mValueAnimators[i].start();
         }
+
+        mAnimStartNanos = -1;
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        if (mAnimStartNanos < 0) {
+            mAnimStartNanos = frameTimeNanos;
+        }
+
+        float fraction = Math.min(1f,
+                (float) (frameTimeNanos - mAnimStartNanos) / ANIM_DURATION_NANOS);
+        fraction = INTERPOLATOR.getInterpolation(fraction);
+        for (int i = 0; i < mBarCount; i++) {
+            mFFTPoints[valueIndex(i)] = mStartValues[i] +
+                    (mTargetValues[i] - mStartValues[i]) * fraction;
+        }
+        invalidate();
+
+        if (fraction < 1f) {
+            mFrameScheduled = true;
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    private void cancelFrame() {
+        mChoreographer.removeFrameCallback(this);
+        mFrameScheduled = false;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelFrame();
     }
 
     @Override
@@ -119,7 +172,7 @@ public class VisualizerView extends View {
         super.onSizeChanged(w, h, oldw, oldh);
 
         mIsVertical = mSupportsVerticalPosition && (h > w);
-        loadValueAnimators();
+        cancelFrame();
         if (mIsVertical) {
             setVertical(w, h);
         } else {
@@ -128,12 +181,12 @@ public class VisualizerView extends View {
     }
 
     private void setHorizontal(int w, int h) {
-        float barUnit = w / 32f;
+        float barUnit = w / (float) mBarCount;
         float barWidth = barUnit * 8f / 9f;
-        barUnit = barWidth + (barUnit - barWidth) * 32f / 31f;
+        barUnit = barWidth + (barUnit - barWidth) * mBarCount / (mBarCount - 1f);
         mPaint.setStrokeWidth(barWidth);
 
-        for (int i = 0; i < 32; i++) {
+        for (int i = 0; i < mBarCount; i++) {
             mFFTPoints[i * 4] = mFFTPoints[i * 4 + 2] = i * barUnit + (barWidth / 2);
             mFFTPoints[i * 4 + 1] = h;
             mFFTPoints[i * 4 + 3] = h;
@@ -141,11 +194,11 @@ public class VisualizerView extends View {
     }
 
     private void setVertical(int w, int h) {
-        float barUnit = h / 32f;
+        float barUnit = h / (float) mBarCount;
         float barHeight = barUnit * 8f / 9f;
-        barUnit = barHeight + (barUnit - barHeight) * 32f / 31f;
+        barUnit = barHeight + (barUnit - barHeight) * mBarCount / (mBarCount - 1f);
         mPaint.setStrokeWidth(barHeight);
-        for (int i = 0; i < 32; i++) {
+        for (int i = 0; i < mBarCount; i++) {
             mFFTPoints[i * 4 + 1] = mFFTPoints[i * 4 + 3] = i * barUnit + (barHeight / 2);
             mFFTPoints[i * 4] = mIsVerticalLeft ? 0 : w;
             mFFTPoints[i * 4 + 2] = mIsVerticalLeft ? 0 : w;